@@ -0,0 +1,59 @@
+package com.qiyanggeng.pictoprime4j;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How fast the searching thread turns a keyframe into candidates, at the sizes of the end-to-end fixtures.
+ * A batch of tests is what the search hands the testers on every attempt. Once a keyframe's sieve is used up it is
+ * rebuilt, as the search would after a rekey, so the cost of sieving is spread over the batches drawn from it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CandidateGenerationBenchmark {
+    @Param({"image-256", "image-1024"})
+    public String fixture;
+    
+    @Param({"8"})
+    public int batchSize;
+    
+    private final SearchCounters counters = new SearchCounters(null);
+    private final SplittableRandom random = new SplittableRandom(1);
+    private DigitBuffer keyFrame;
+    private NeighborhoodSieve sieve;
+    private TestedCandidates tested;
+    
+    @Setup(Level.Iteration)
+    public void setup() {
+        keyFrame = PrimeSearch.toKeyFrame(Fixtures.number(fixture));
+        sieve = PrimeSearch.newSieve(keyFrame, counters);
+        tested = new TestedCandidates();
+    }
+    
+    @Benchmark
+    public List<BigInteger> generateTests() {
+        if(sieve.isExhausted()) {
+            sieve = PrimeSearch.newSieve(keyFrame, counters);
+            tested = new TestedCandidates();
+        }
+        return PrimeSearch.generateTests(tested, sieve, batchSize, random, counters);
+    }
+    
+    @Benchmark
+    public DigitBuffer generateExtraTest() {
+        return PrimeSearch.generateExtraTest(tested, keyFrame, random, counters);
+    }
+    
+    @Benchmark
+    public NeighborhoodSieve newSieve() {
+        return PrimeSearch.newSieve(keyFrame, counters);
+    }
+}
@@ -0,0 +1,48 @@
+package com.qiyanggeng.pictoprime4j;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A whole search, from the fixture number to a confirmed prime, on an engine with one tester per core.
+ * The search is seeded, so every iteration tests the same candidates and finds the same prime, and runs compare the
+ * cost of one search rather than how lucky its random choices were.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FindPrimeBenchmark {
+    // Takes about the average number of tests on both fixtures, 14 for image-256 and 58 for image-1024
+    private static final long SEED = 2;
+    
+    @Param({"image-256", "image-1024"})
+    public String fixture;
+    
+    private BigInteger original;
+    private SearchOptions options;
+    private PrimeSearchEngine engine;
+    
+    @Setup
+    public void setup() {
+        original = Fixtures.number(fixture);
+        options = SearchOptions.defaults().withSeed(SEED);
+        engine = new PrimeSearchEngine();
+    }
+    
+    @TearDown
+    public void tearDown() {
+        engine.close();
+    }
+    
+    @Benchmark
+    public PrimeResult findPrime() throws TimeoutException {
+        return PrimeSearch.search(engine, original, Duration.ZERO, options, null);
+    }
+}
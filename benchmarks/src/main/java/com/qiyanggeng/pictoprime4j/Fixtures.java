@@ -0,0 +1,71 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Inputs shared by the benchmarks, the same on every run.
+ * Images are drawn pixel by pixel from a seeded Random rather than through Java2D, so they do not depend on the
+ * rendering pipeline. The numbers for the end-to-end search are files under fixtures/, converted once from such an
+ * image, so that a change to the ASCII conversion does not change what the search benchmarks measure.
+ */
+final class Fixtures {
+    private Fixtures() {}
+    
+    /**
+     * A few soft-edged discs over a diagonal gradient with some noise, roughly what a logo or icon looks like.
+     */
+    static BufferedImage syntheticImage(int width, int height, int type, long seed) {
+        Random random = new Random(seed);
+        int discCount = 6;
+        double[] discX = new double[discCount];
+        double[] discY = new double[discCount];
+        double[] discRadius = new double[discCount];
+        int[] discColour = new int[discCount];
+        for(int i = 0; i < discCount; i++) {
+            discX[i] = random.nextDouble() * width;
+            discY[i] = random.nextDouble() * height;
+            discRadius[i] = (0.05 + 0.2*random.nextDouble()) * Math.min(width, height);
+            discColour[i] = random.nextInt(0x1000000);
+        }
+        
+        BufferedImage image = new BufferedImage(width, height, type);
+        for(int y = 0; y < height; y++) {
+            for(int x = 0; x < width; x++) {
+                int shade = (int) (255.0 * (x + y) / (width + height));
+                int rgb = shade << 16 | shade << 8 | shade;
+                for(int i = 0; i < discCount; i++)
+                    if(Math.hypot(x - discX[i], y - discY[i]) < discRadius[i])
+                        rgb = discColour[i];
+                int noise = random.nextInt(16) - 8;
+                int r = clamp((rgb >> 16 & 0xff) + noise);
+                int g = clamp((rgb >> 8 & 0xff) + noise);
+                int b = clamp((rgb & 0xff) + noise);
+                image.setRGB(x, y, 0xff000000 | r << 16 | g << 8 | b);
+            }
+        }
+        return image;
+    }
+    
+    private static int clamp(int channel) {
+        return Math.max(0, Math.min(255, channel));
+    }
+    
+    /**
+     * Reads a number from fixtures/{name}.txt.
+     */
+    static BigInteger number(String name) {
+        try(InputStream stream = Fixtures.class.getClassLoader().getResourceAsStream("fixtures/" + name + ".txt")) {
+            if(stream == null)
+                throw new IllegalArgumentException("No such fixture: " + name);
+            return new BigInteger(new String(stream.readAllBytes(), StandardCharsets.US_ASCII).strip());
+        } catch(IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.qiyanggeng.pictoprime4j;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lays a prime out as rows of digits, starting from the BigInteger a search returns, for a 1024-digit image and a
+ * number the size of a 316x316 one. regex converts the number with toString and formats it with the replaceAll
+ * formatPrime used to do, formatPrime with toString and today's formatPrime, and writePrime streams it to an output
+ * converting it a piece at a time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FormatPrimeBenchmark {
+    @Param({"1024", "100000"})
+    public int digits;
+    
+    private BigInteger prime;
+    private int width;
+    
+    @Setup
+    public void setup() {
+        prime = new BigInteger(new BigInteger(digits * 4, new Random(1)).toString().substring(0, digits));
+        width = (int) Math.sqrt(digits);
+    }
+    
+    @Benchmark
+    public String regex() {
+        return prime.toString().replaceAll(String.format(".{%d}", width), "$0\n");
+    }
+    
+    @Benchmark
+    public String formatPrime() {
+        return Pictoprime.formatPrime(prime.toString(), width);
+    }
+    
+    @Benchmark
+    public void writePrime(Blackhole blackhole) throws IOException {
+        Pictoprime.writePrime(prime, width, new OutputStream() {
+            @Override
+            public void write(int b) {
+                blackhole.consume(b);
+            }
+            
+            @Override
+            public void write(byte[] chunk, int offset, int length) {
+                blackhole.consume(chunk);
+            }
+        });
+    }
+}
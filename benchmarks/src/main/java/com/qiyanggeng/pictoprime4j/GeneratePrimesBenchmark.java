@@ -0,0 +1,37 @@
+package com.qiyanggeng.pictoprime4j;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The sieve of Eratosthenes behind the small primes, at the default bound and at the larger ones deep sieving uses.
+ * generatePrimes boxes the same primes that primesUpTo returns as an int[], and tableUpTo copies them from the
+ * precomputed table where it reaches.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GeneratePrimesBenchmark {
+    @Param({"17389", "1000000", "10000000"})
+    public int bound;
+    
+    @Benchmark
+    public List<Integer> generatePrimes() {
+        return PrimeSearch.generatePrimes(bound);
+    }
+    
+    @Benchmark
+    public int[] primesUpTo() {
+        return PrimeSieve.primesUpTo(bound);
+    }
+    
+    @Benchmark
+    public int[] tableUpTo() {
+        return PrimeTable.primesUpTo(bound);
+    }
+}
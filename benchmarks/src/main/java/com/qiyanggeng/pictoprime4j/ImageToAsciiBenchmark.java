@@ -0,0 +1,43 @@
+package com.qiyanggeng.pictoprime4j;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converts a 2048x1536 synthetic image to ASCII at several target widths, from the image types decoders usually return.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImageToAsciiBenchmark {
+    private static final List<String> DIGITS = List.of("8049922777".split(""));
+    
+    @Param({"32", "128", "512"})
+    public int width;
+    
+    @Param({"INT_ARGB", "3BYTE_BGR"})
+    public String type;
+    
+    private BufferedImage image;
+    
+    @Setup
+    public void setup() {
+        int imageType = switch(type) {
+            case "INT_ARGB" -> BufferedImage.TYPE_INT_ARGB;
+            case "3BYTE_BGR" -> BufferedImage.TYPE_3BYTE_BGR;
+            default -> throw new IllegalArgumentException(type);
+        };
+        image = Fixtures.syntheticImage(2048, 1536, imageType, 1);
+    }
+    
+    @Benchmark
+    public String convertImageToAscii() {
+        return ImageToAscii.convertImageToAscii(image, width, 0.9f, DIGITS);
+    }
+}
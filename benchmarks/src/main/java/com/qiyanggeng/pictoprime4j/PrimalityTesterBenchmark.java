@@ -0,0 +1,61 @@
+package com.qiyanggeng.pictoprime4j;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the primality testers against BigInteger.isProbablePrime(1), which the search used before.
+ * The composites are the kind the search actually tests: no factor below the small prime bound.
+ * Every tester is checked against the known answers during setup, so a wrong tester fails the run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrimalityTesterBenchmark {
+    @Param({"256", "1024", "2048"})
+    public int digits;
+
+    @Param({"bigInteger", "strongBaseTwo", "bailliePSW"})
+    public String tester;
+
+    private PrimalityTester primalityTester;
+    private BigInteger prime;
+    private BigInteger composite;
+
+    @Setup
+    public void setup() {
+        primalityTester = switch(tester) {
+            case "bigInteger" -> PrimalityTester.bigInteger(1);
+            case "strongBaseTwo" -> PrimalityTester.strongBaseTwo();
+            case "bailliePSW" -> PrimalityTester.bailliePSW(0);
+            default -> throw new IllegalArgumentException(tester);
+        };
+
+        SmallPrimeFilter filter = new SmallPrimeFilter(PrimeSearch.generatePrimes(17389));
+        Random random = new Random(digits);
+        BigInteger lower = BigInteger.TEN.pow(digits - 1);
+        prime = lower.add(new BigInteger(lower.bitLength() - 4, random)).nextProbablePrime();
+        do {
+            composite = lower.add(new BigInteger(lower.bitLength() - 4, random)).setBit(0);
+        } while(!filter.isNotDivisible(composite) || composite.isProbablePrime(20));
+
+        if(!primalityTester.isProbablePrime(prime) || primalityTester.isProbablePrime(composite))
+            throw new IllegalStateException(tester + " gave a wrong answer");
+    }
+
+    @Benchmark
+    public boolean prime() {
+        return primalityTester.isProbablePrime(prime);
+    }
+
+    @Benchmark
+    public boolean composite() {
+        return primalityTester.isProbablePrime(composite);
+    }
+}
@@ -0,0 +1,54 @@
+package com.qiyanggeng.pictoprime4j;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the grouped long-residue small prime filter against the previous
+ * one-BigInteger-remainder-per-prime implementation.
+ * Candidates are chosen so that no small prime divides them, which is the case where every prime must be checked.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SmallPrimeFilterBenchmark {
+    @Param({"256", "1024", "4096"})
+    public int digits;
+    
+    private List<BigInteger> smallPrimes;
+    private SmallPrimeFilter filter;
+    private BigInteger candidate;
+    
+    @Setup
+    public void setup() {
+        List<Integer> primes = PrimeSearch.generatePrimes(17389);
+        smallPrimes = primes.stream().map(BigInteger::valueOf).toList();
+        filter = new SmallPrimeFilter(primes);
+        
+        Random random = new Random(digits);
+        BigInteger lower = BigInteger.TEN.pow(digits - 1);
+        do {
+            candidate = lower.add(new BigInteger(lower.bitLength(), random));
+        } while(!filter.isNotDivisible(candidate) || candidate.toString().length() != digits);
+    }
+    
+    @Benchmark
+    public boolean remainderPerPrime() {
+        for(BigInteger v : smallPrimes)
+            if(candidate.remainder(v).equals(BigInteger.ZERO))
+                return false;
+        return true;
+    }
+    
+    @Benchmark
+    public boolean groupedLongResidue() {
+        return filter.isNotDivisible(candidate);
+    }
+}
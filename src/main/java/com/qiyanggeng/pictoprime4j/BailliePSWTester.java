@@ -0,0 +1,192 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.math.BigInteger;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
+
+/**
+ * The Baillie-PSW probable prime test, optionally followed by Miller-Rabin rounds with random bases.
+ * See https://en.wikipedia.org/wiki/Baillie%E2%80%93PSW_primality_test
+ */
+class BailliePSWTester implements PrimalityTester {
+    private static final int[] SMALL_PRIMES = {3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41, 43, 47, 53, 59, 61, 67, 71, 73, 79, 83, 89, 97};
+    
+    private final int extraRounds;
+    
+    /**
+     * @param certainty Each extra Miller-Rabin round lets a composite through with a probability of at most 1/4
+     */
+    BailliePSWTester(int certainty) {
+        if(certainty < 0)
+            throw new IllegalArgumentException("certainty must not be negative: " + certainty);
+        this.extraRounds = (certainty + 1) / 2;
+    }
+    
+    @Override
+    public boolean isProbablePrime(BigInteger value) {
+        return isProbablePrime(value, () -> false);
+    }
+    
+    @Override
+    public boolean isProbablePrime(BigInteger value, BooleanSupplier cancelled) {
+        if(value.compareTo(BigInteger.TWO) < 0)
+            return false;
+        if(!value.testBit(0))
+            return value.equals(BigInteger.TWO);
+        for(int p : SMALL_PRIMES) {
+            BigInteger prime = BigInteger.valueOf(p);
+            if(value.equals(prime))
+                return true;
+            if(value.mod(prime).signum() == 0)
+                return false;
+        }
+        
+        return StrongProbablePrimeTester.isStrongProbablePrimeBaseTwo(value, cancelled)
+                && isStrongLucasProbablePrime(value, cancelled)
+                && passesMillerRabin(value, extraRounds);
+    }
+    
+    /**
+     * The strong Lucas probable prime test with Selfridge's parameters: D is the first of 5, -7, 9, -11, ... with
+     * Jacobi symbol (D/n) = -1, P = 1 and Q = (1 - D)/4. The value must be odd and have no factors below 100.
+     */
+    static boolean isStrongLucasProbablePrime(BigInteger n, BooleanSupplier cancelled) {
+        // No suitable D exists for perfect squares
+        BigInteger root = n.sqrt();
+        if(root.multiply(root).equals(n))
+            return false;
+        
+        long d = 5;
+        while(true) {
+            int jacobi = jacobi(d, n);
+            if(jacobi == -1)
+                break;
+            if(jacobi == 0 && BigInteger.valueOf(Math.abs(d)).compareTo(n) != 0)
+                return false;
+            d = d > 0 ? -(d + 2) : -(d - 2);
+        }
+        final BigInteger bigD = BigInteger.valueOf(d);
+        final BigInteger q = BigInteger.valueOf((1 - d) / 4).mod(n);
+        
+        // n + 1 = k * 2^s with k odd
+        final BigInteger nPlusOne = n.add(BigInteger.ONE);
+        final int s = nPlusOne.getLowestSetBit();
+        final BigInteger k = nPlusOne.shiftRight(s);
+        
+        // U_1 = 1, V_1 = P = 1, then walk the bits of k doubling the index and adding one where the bit is set
+        BigInteger u = BigInteger.ONE;
+        BigInteger v = BigInteger.ONE;
+        BigInteger qk = q;
+        for(int bit = k.bitLength() - 2; bit >= 0; bit--) {
+            if(bit % 64 == 0 && cancelled.getAsBoolean())
+                throw new CancellationException();
+            u = u.multiply(v).mod(n);
+            v = v.multiply(v).subtract(qk.shiftLeft(1)).mod(n);
+            qk = qk.multiply(qk).mod(n);
+            if(k.testBit(bit)) {
+                BigInteger nextU = halve(u.add(v), n);
+                v = halve(bigD.multiply(u).add(v), n);
+                u = nextU;
+                qk = qk.multiply(q).mod(n);
+            }
+        }
+        
+        if(u.signum() == 0 || v.signum() == 0)
+            return true;
+        for(int r = 1; r < s; r++) {
+            v = v.multiply(v).subtract(qk.shiftLeft(1)).mod(n);
+            if(v.signum() == 0)
+                return true;
+            qk = qk.multiply(qk).mod(n);
+        }
+        return false;
+    }
+    
+    // x/2 mod n for odd n
+    private static BigInteger halve(BigInteger x, BigInteger n) {
+        x = x.mod(n);
+        if(x.testBit(0))
+            x = x.add(n);
+        return x.shiftRight(1);
+    }
+    
+    /**
+     * The Jacobi symbol (a/n) for odd positive n.
+     */
+    static int jacobi(long a, BigInteger n) {
+        int result = 1;
+        if(a < 0) {
+            a = -a;
+            // (-1/n) = -1 iff n = 3 mod 4
+            if(n.testBit(1))
+                result = -result;
+        }
+        while(a != 0 && a % 2 == 0) {
+            a /= 2;
+            // (2/n) = -1 iff n = 3 or 5 mod 8
+            int nMod8 = n.intValue() & 7;
+            if(nMod8 == 3 || nMod8 == 5)
+                result = -result;
+        }
+        if(a == 0)
+            return n.equals(BigInteger.ONE) ? result : 0;
+        if(a == 1)
+            return result;
+        
+        // Quadratic reciprocity, after which both numbers fit in a long
+        if((a & 3) == 3 && n.testBit(1))
+            result = -result;
+        return result * jacobi(n.mod(BigInteger.valueOf(a)).longValue(), a);
+    }
+    
+    private static int jacobi(long a, long n) {
+        int result = 1;
+        a %= n;
+        while(a != 0) {
+            while(a % 2 == 0) {
+                a /= 2;
+                long nMod8 = n & 7;
+                if(nMod8 == 3 || nMod8 == 5)
+                    result = -result;
+            }
+            long swap = a;
+            a = n;
+            n = swap;
+            if((a & 3) == 3 && (n & 3) == 3)
+                result = -result;
+            a %= n;
+        }
+        return n == 1 ? result : 0;
+    }
+    
+    private static boolean passesMillerRabin(BigInteger n, int rounds) {
+        final BigInteger nMinusOne = n.subtract(BigInteger.ONE);
+        final int s = nMinusOne.getLowestSetBit();
+        final BigInteger d = nMinusOne.shiftRight(s);
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        
+        for(int i = 0; i < rounds; i++) {
+            // A random base in [2, n - 2]
+            BigInteger base;
+            do {
+                base = new BigInteger(n.bitLength(), random);
+            } while(base.compareTo(BigInteger.TWO) < 0 || base.compareTo(nMinusOne) >= 0);
+            
+            BigInteger x = base.modPow(d, n);
+            if(x.equals(BigInteger.ONE) || x.equals(nMinusOne))
+                continue;
+            boolean witness = true;
+            for(int r = 1; r < s && witness; r++) {
+                x = x.multiply(x).mod(n);
+                if(x.equals(nMinusOne))
+                    witness = false;
+                else if(x.equals(BigInteger.ONE))
+                    break;
+            }
+            if(witness)
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,17 @@
+package com.qiyanggeng.pictoprime4j;
+
+/**
+ * Lets a caller stop a search it started asynchronously.
+ * A token can be shared by several searches, cancelling it stops all of them.
+ */
+public class CancellationToken {
+    private volatile boolean cancelled;
+    
+    public void cancel() {
+        cancelled = true;
+    }
+    
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,68 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The candidates for the companion of a prime p: the numbers k(p + 1) - 1 for the multipliers
+ * 2, 4, 6, 8, 10, 20, ..., 90, 100, 200, ..., 9 * 10^32. With k = 2 that is 2p + 1, which makes p a Sophie Germain
+ * prime, and with k = j * 10^i it is j(p + 1) - 1 followed by i nines, so the companion still looks like the picture.
+ * All the multipliers are sieved at once: with (p + 1) mod q for a small prime q, the residue of every candidate
+ * modulo q takes a few long operations.
+ */
+final class CompanionSieve {
+    // Multiplier m is MULTIPLIER_DIGIT[m] * 10^MULTIPLIER_EXPONENT[m]
+    private static final int[] MULTIPLIER_DIGIT;
+    private static final int[] MULTIPLIER_EXPONENT;
+    private static final int MAX_EXPONENT = 32;
+    
+    static {
+        final int count = 4 + 9*MAX_EXPONENT;
+        MULTIPLIER_DIGIT = new int[count];
+        MULTIPLIER_EXPONENT = new int[count];
+        for(int m = 0; m < 4; m++)
+            MULTIPLIER_DIGIT[m] = 2*(m + 1);
+        for(int i = 1, m = 4; i <= MAX_EXPONENT; i++) {
+            for(int j = 1; j <= 9; j++, m++) {
+                MULTIPLIER_DIGIT[m] = j;
+                MULTIPLIER_EXPONENT[m] = i;
+            }
+        }
+    }
+    
+    private CompanionSieve() {}
+    
+    /**
+     * Returns the candidates that no prime of the filter divides, smallest multiplier first.
+     */
+    static List<BigInteger> candidates(BigInteger prime, SmallPrimeFilter filter) {
+        final BigInteger base = prime.add(BigInteger.ONE);
+        final int[] primes = filter.primes();
+        final int[] residues = filter.residues(base);
+        final int count = MULTIPLIER_DIGIT.length;
+        final long[] powersOfTen = new long[MAX_EXPONENT + 1];
+        BitSet composite = new BitSet(count);
+        
+        for(int t = 0; t < primes.length; t++) {
+            final long q = primes[t];
+            powersOfTen[0] = 1 % q;
+            for(int i = 1; i <= MAX_EXPONENT; i++)
+                powersOfTen[i] = powersOfTen[i - 1] * 10 % q;
+            for(int m = 0; m < count; m++) {
+                long multiplier = MULTIPLIER_DIGIT[m] * powersOfTen[MULTIPLIER_EXPONENT[m]] % q;
+                if((multiplier * residues[t] - 1) % q == 0)
+                    composite.set(m);
+            }
+        }
+        
+        List<BigInteger> candidates = new ArrayList<>();
+        for(int m = composite.nextClearBit(0); m < count; m = composite.nextClearBit(m + 1)) {
+            BigInteger multiplier = BigInteger.TEN.pow(MULTIPLIER_EXPONENT[m])
+                    .multiply(BigInteger.valueOf(MULTIPLIER_DIGIT[m]));
+            candidates.add(base.multiply(multiplier).subtract(BigInteger.ONE));
+        }
+        return candidates;
+    }
+}
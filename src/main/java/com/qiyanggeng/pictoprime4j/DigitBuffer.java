@@ -0,0 +1,150 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * A mutable decimal number, most significant digit first, stored as ASCII digits.
+ * It keeps an index of the positions the search is allowed to modify (every position holding a modifiable digit,
+ * except the last), which is updated in O(1) whenever a digit changes, so picking and replacing a digit never
+ * needs to go through a String or a BigInteger.
+ * It also keeps a 64-bit fingerprint of its digits, the XOR of a hash of every (position, digit) pair, so the
+ * fingerprint of a number one digit away is also O(1).
+ */
+class DigitBuffer {
+    private final byte[] digits;
+    private final boolean[] modifiableDigits;
+    // The first modifiableCount entries are the modifiable positions, indexInModifiable[position] is the
+    // position's index in that array, or -1 if it is not modifiable
+    private final int[] modifiable;
+    private final int[] indexInModifiable;
+    private int modifiableCount;
+    private long fingerprint;
+    
+    /**
+     * @param value The digits of a non-negative number
+     * @param modifiableDigits For each digit 0-9, whether the search may replace it
+     */
+    DigitBuffer(CharSequence value, boolean[] modifiableDigits) {
+        this.digits = new byte[value.length()];
+        this.modifiableDigits = modifiableDigits;
+        this.modifiable = new int[digits.length];
+        this.indexInModifiable = new int[digits.length];
+        Arrays.fill(indexInModifiable, -1);
+        
+        for(int i = 0; i < digits.length; i++) {
+            char c = value.charAt(i);
+            if(c < '0' || c > '9')
+                throw new NumberFormatException("Not a decimal digit: " + c);
+            digits[i] = (byte) c;
+            fingerprint ^= digitHash(i, c - '0');
+            updateModifiable(i);
+        }
+    }
+    
+    private DigitBuffer(DigitBuffer other) {
+        this.digits = other.digits.clone();
+        this.modifiableDigits = other.modifiableDigits;
+        this.modifiable = other.modifiable.clone();
+        this.indexInModifiable = other.indexInModifiable.clone();
+        this.modifiableCount = other.modifiableCount;
+        this.fingerprint = other.fingerprint;
+    }
+    
+    DigitBuffer copy() {
+        return new DigitBuffer(this);
+    }
+    
+    int length() {
+        return digits.length;
+    }
+    
+    /**
+     * Returns the digit at the position, as a number from 0 to 9.
+     */
+    int digitAt(int position) {
+        return digits[position] - '0';
+    }
+    
+    void setDigit(int position, int digit) {
+        fingerprint = fingerprintWith(position, digit);
+        digits[position] = (byte) ('0' + digit);
+        updateModifiable(position);
+    }
+    
+    int modifiableCount() {
+        return modifiableCount;
+    }
+    
+    /**
+     * Returns a uniformly chosen modifiable position, or -1 if there are none.
+     */
+    int randomModifiablePosition(RandomGenerator random) {
+        return modifiableCount == 0 ? -1 : modifiable[random.nextInt(modifiableCount)];
+    }
+    
+    boolean isModifiable(int position) {
+        return indexInModifiable[position] >= 0;
+    }
+    
+    private void updateModifiable(int position) {
+        boolean shouldBe = position != digits.length - 1 && modifiableDigits[digitAt(position)];
+        int index = indexInModifiable[position];
+        if(shouldBe && index < 0) {
+            modifiable[modifiableCount] = position;
+            indexInModifiable[position] = modifiableCount++;
+        } else if(!shouldBe && index >= 0) {
+            int last = modifiable[--modifiableCount];
+            modifiable[index] = last;
+            indexInModifiable[last] = index;
+            indexInModifiable[position] = -1;
+        }
+    }
+    
+    /**
+     * A hash of the digits. Buffers holding the same digits have the same fingerprint, and different digits only
+     * collide with a probability of about 2^-64.
+     */
+    long fingerprint() {
+        return fingerprint;
+    }
+    
+    /**
+     * The fingerprint of the number with a single digit replaced, without modifying this buffer.
+     */
+    long fingerprintWith(int position, int digit) {
+        return fingerprint ^ digitHash(position, digitAt(position)) ^ digitHash(position, digit);
+    }
+    
+    // The finalizer of SplitMix64 applied to the pair's index, see https://prng.di.unimi.it/splitmix64.c
+    private static long digitHash(int position, int digit) {
+        long z = (position * 10L + digit + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+    
+    BigInteger toBigInteger() {
+        return new BigInteger(toString());
+    }
+    
+    /**
+     * Converts the number with a single digit replaced, without modifying this buffer.
+     */
+    BigInteger toBigIntegerWith(int position, int digit) {
+        byte previous = digits[position];
+        digits[position] = (byte) ('0' + digit);
+        try {
+            return toBigInteger();
+        } finally {
+            digits[position] = previous;
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return new String(digits, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,229 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Lays a number's digits out as rows of a fixed width, each full row followed by a line break and the last row left
+ * open if it is short, the way {@link Pictoprime#formatPrime(String, int)} prints an image. The rows are copied to
+ * the output a chunk at a time, so the whole grid is never held as one string. A BigInteger is converted to decimal
+ * a piece at a time too, so not even its digits are.
+ */
+final class DigitGrid {
+    // Characters per chunk
+    private static final int CHUNK_SIZE = 1 << 14;
+    // The digits converted by a single BigInteger.toString, the pieces a number is split into
+    private static final int PIECE_DIGITS = 1024;
+    private static final BigInteger PIECE_DIVISOR = BigInteger.TEN.pow(PIECE_DIGITS);
+    // powers[i] is 10^(PIECE_DIGITS * 2^i), grown as bigger numbers are written and kept for the next ones
+    private static volatile BigInteger[] powers = {PIECE_DIVISOR};
+    
+    private DigitGrid() {}
+    
+    /**
+     * Receives the grid a chunk at a time, as ASCII bytes. The chunk array is reused for the next chunk.
+     */
+    @FunctionalInterface
+    interface ByteSink {
+        void write(byte[] chunk, int length) throws IOException;
+    }
+    
+    /**
+     * Receives the grid a chunk at a time. The chunk array is reused for the next chunk.
+     */
+    @FunctionalInterface
+    private interface CharSink {
+        void write(char[] chunk, int length) throws IOException;
+    }
+    
+    /**
+     * The length of the grid, line breaks included.
+     */
+    static int length(String digits, int width) {
+        checkWidth(width);
+        return digits.length() + digits.length() / width;
+    }
+    
+    static void appendTo(StringBuilder out, String digits, int width) {
+        checkWidth(width);
+        int length = digits.length();
+        int rowEnd;
+        for(int start = 0; start < length; start = rowEnd) {
+            rowEnd = start + Math.min(width, length - start);
+            out.append(digits, start, rowEnd);
+            if(rowEnd - start == width)
+                out.append('\n');
+        }
+    }
+    
+    static void write(String digits, int width, Writer out) throws IOException {
+        Rows rows = new Rows(width, Math.min(CHUNK_SIZE, length(digits, width)), toCharSink(out));
+        rows.append(digits);
+        rows.flush();
+    }
+    
+    static void write(String digits, int width, ByteSink out) throws IOException {
+        Rows rows = new Rows(width, Math.min(CHUNK_SIZE, length(digits, width)), toCharSink(out));
+        rows.append(digits);
+        rows.flush();
+    }
+    
+    static void write(BigInteger number, int width, Writer out) throws IOException {
+        checkWidth(width);
+        Rows rows = new Rows(width, CHUNK_SIZE, toCharSink(out));
+        appendDigits(rows, number);
+        rows.flush();
+    }
+    
+    static void write(BigInteger number, int width, ByteSink out) throws IOException {
+        checkWidth(width);
+        Rows rows = new Rows(width, CHUNK_SIZE, toCharSink(out));
+        appendDigits(rows, number);
+        rows.flush();
+    }
+    
+    private static CharSink toCharSink(Writer out) {
+        return (chunk, length) -> out.write(chunk, 0, length);
+    }
+    
+    private static CharSink toCharSink(ByteSink out) {
+        byte[] bytes = new byte[CHUNK_SIZE];
+        return (chunk, length) -> {
+            for(int i = 0; i < length; i++)
+                bytes[i] = (byte) chunk[i];
+            out.write(bytes, length);
+        };
+    }
+    
+    /**
+     * Appends the decimal digits of the number, most significant first. Like BigInteger.toString, it splits the
+     * number by powers of ten, 10^PIECE_DIGITS squared again and again, into a high and a low half and converts the
+     * halves the same way, down to pieces of at most PIECE_DIGITS digits. Each piece is appended as soon as it is
+     * converted, so apart from the number itself only one chain of halves is held at a time.
+     */
+    private static void appendDigits(Rows rows, BigInteger number) throws IOException {
+        if(number.signum() < 0) {
+            rows.append("-");
+            number = number.negate();
+        }
+        appendLeading(rows, number);
+    }
+    
+    /**
+     * Returns 10^(PIECE_DIGITS * 2^level).
+     */
+    private static BigInteger power(int level) {
+        BigInteger[] known = powers;
+        if(level < known.length)
+            return known[level];
+        synchronized(DigitGrid.class) {
+            known = powers;
+            if(level >= known.length) {
+                BigInteger[] grown = Arrays.copyOf(known, level + 1);
+                for(int i = known.length; i <= level; i++)
+                    grown[i] = grown[i - 1].multiply(grown[i - 1]);
+                powers = known = grown;
+            }
+            return known[level];
+        }
+    }
+    
+    /**
+     * Appends a number without leading zeros.
+     */
+    private static void appendLeading(Rows rows, BigInteger number) throws IOException {
+        if(number.compareTo(PIECE_DIVISOR) < 0) {
+            rows.append(number.toString());
+            return;
+        }
+        
+        // The largest power no greater than the number, so the high half is not zero and is below that power
+        int level = 0;
+        while(power(level + 1).compareTo(number) <= 0)
+            level++;
+        BigInteger[] halves = number.divideAndRemainder(power(level));
+        appendLeading(rows, halves[0]);
+        appendPadded(rows, halves[1], level);
+    }
+    
+    /**
+     * Appends a number below power(level) as exactly PIECE_DIGITS * 2^level digits, with leading zeros.
+     */
+    private static void appendPadded(Rows rows, BigInteger number, int level) throws IOException {
+        if(level == 0) {
+            String digits = number.toString();
+            rows.appendZeros(PIECE_DIGITS - digits.length());
+            rows.append(digits);
+            return;
+        }
+        
+        BigInteger[] halves = number.divideAndRemainder(power(level - 1));
+        appendPadded(rows, halves[0], level - 1);
+        appendPadded(rows, halves[1], level - 1);
+    }
+    
+    /**
+     * The grid being written, which takes its digits a piece at a time and keeps track of where the row ends.
+     */
+    private static class Rows {
+        private final int width;
+        private final char[] chunk;
+        private final CharSink out;
+        private int filled;
+        private int column;
+        
+        private Rows(int width, int chunkSize, CharSink out) {
+            this.width = width;
+            this.chunk = new char[Math.max(1, chunkSize)];
+            this.out = out;
+        }
+        
+        private void append(String digits) throws IOException {
+            int start = 0;
+            while(start < digits.length()) {
+                int count = Math.min(Math.min(digits.length() - start, width - column), chunk.length - filled);
+                digits.getChars(start, start + count, chunk, filled);
+                start += count;
+                advance(count);
+            }
+        }
+        
+        private void appendZeros(int count) throws IOException {
+            while(count > 0) {
+                int filling = Math.min(Math.min(count, width - column), chunk.length - filled);
+                Arrays.fill(chunk, filled, filled + filling, '0');
+                count -= filling;
+                advance(filling);
+            }
+        }
+        
+        /**
+         * Moves past characters just put in the chunk, breaking the row if it is full.
+         */
+        private void advance(int count) throws IOException {
+            filled += count;
+            column += count;
+            if(column == width) {
+                if(filled == chunk.length)
+                    flush();
+                chunk[filled++] = '\n';
+                column = 0;
+            }
+            if(filled == chunk.length)
+                flush();
+        }
+        
+        private void flush() throws IOException {
+            if(filled > 0)
+                out.write(chunk, filled);
+            filled = 0;
+        }
+    }
+    
+    private static void checkWidth(int width) {
+        if(width < 1)
+            throw new IllegalArgumentException("width must be positive: " + width);
+    }
+}
@@ -0,0 +1,134 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands the work of concurrent searches to a shared set of consumers, in proportion to the searches' priorities.
+ * Every search queues its work in a lane of its own, and lanes are served by stride scheduling: taking an item from a
+ * lane advances the lane's pass by a stride inversely proportional to its priority, and the consumers always take from
+ * the non-empty lane with the lowest pass. A lane that was empty for a while resumes at the current pass, so a search
+ * cannot save up a share it did not use.
+ * See https://en.wikipedia.org/wiki/Stride_scheduling
+ */
+class FairScheduler<T> {
+    private static final long STRIDE_BASE = 1L << 20;
+    
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    // The non-empty lanes, lowest pass first
+    private final PriorityQueue<Lane> ready = new PriorityQueue<>(Comparator.comparingLong((Lane lane) -> lane.pass)
+            .thenComparingLong(lane -> lane.id));
+    private final int laneCapacity;
+    private long currentPass;
+    private long laneCount;
+    
+    /**
+     * @param laneCapacity The number of items a lane holds before offers to it wait
+     */
+    FairScheduler(int laneCapacity) {
+        if(laneCapacity < 1)
+            throw new IllegalArgumentException("laneCapacity must be positive: " + laneCapacity);
+        this.laneCapacity = laneCapacity;
+    }
+    
+    /**
+     * @param priority The share of the consumers this lane gets relative to the other lanes, at least 1
+     */
+    Lane newLane(int priority) {
+        if(priority < 1)
+            throw new IllegalArgumentException("priority must be positive: " + priority);
+        lock.lock();
+        try {
+            return new Lane(laneCount++, STRIDE_BASE / priority);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Takes the next item from the lane whose turn it is, waiting until there is one.
+     */
+    T take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while(ready.isEmpty())
+                notEmpty.await();
+            
+            Lane lane = ready.poll();
+            T item = lane.items.poll();
+            currentPass = lane.pass;
+            lane.pass += lane.stride;
+            if(!lane.items.isEmpty())
+                ready.add(lane);
+            lane.notFull.signal();
+            return item;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    class Lane {
+        private final long id;
+        private final long stride;
+        private final ArrayDeque<T> items = new ArrayDeque<>();
+        private final Condition notFull = lock.newCondition();
+        private long pass;
+        private boolean closed;
+        
+        private Lane(long id, long stride) {
+            this.id = id;
+            this.stride = stride;
+            this.pass = currentPass;
+        }
+        
+        /**
+         * Queues the item, waiting up to the timeout for room in the lane.
+         * Returns false if the item was not queued because the lane is full or closed.
+         */
+        boolean offer(T item, long timeout, TimeUnit unit) throws InterruptedException {
+            long nanos = unit.toNanos(timeout);
+            lock.lockInterruptibly();
+            try {
+                while(items.size() >= laneCapacity && !closed) {
+                    if(nanos <= 0)
+                        return false;
+                    nanos = notFull.awaitNanos(nanos);
+                }
+                if(closed)
+                    return false;
+                
+                if(items.isEmpty()) {
+                    pass = Math.max(pass, currentPass);
+                    ready.add(this);
+                    notEmpty.signal();
+                }
+                items.add(item);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+        
+        /**
+         * Drops the queued items and refuses any further ones.
+         */
+        void close() {
+            lock.lock();
+            try {
+                closed = true;
+                if(!items.isEmpty()) {
+                    items.clear();
+                    ready.remove(this);
+                }
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.awt.image.BufferedImage;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+
+/**
+ * One image of a batch, see {@link Pictoprime#createAll(java.util.Collection)}.
+ * Instances are immutable, {@link #withOptions(SearchOptions)} returns a modified copy.
+ */
+public class ImageJob {
+    private final Callable<BufferedImage> image;
+    private final int widths;
+    private final float contrastScaleFactor;
+    private final SearchOptions options;
+    
+    private ImageJob(Callable<BufferedImage> image, int widths, float contrastScaleFactor, SearchOptions options) {
+        this.image = image;
+        this.widths = widths;
+        this.contrastScaleFactor = contrastScaleFactor;
+        this.options = Objects.requireNonNull(options);
+    }
+    
+    /**
+     * @param filePath The image's path on the class path, only loaded once the batch runs
+     */
+    public static ImageJob of(String filePath, int widths, float contrastScaleFactor) {
+        Objects.requireNonNull(filePath);
+        return new ImageJob(() -> Pictoprime.loadImage(filePath, widths), widths, contrastScaleFactor, SearchOptions.defaults());
+    }
+    
+    public static ImageJob of(BufferedImage image, int widths, float contrastScaleFactor) {
+        Objects.requireNonNull(image);
+        return new ImageJob(() -> image, widths, contrastScaleFactor, SearchOptions.defaults());
+    }
+    
+    /**
+     * Sets the options of this image's search, including its priority within the batch.
+     */
+    public ImageJob withOptions(SearchOptions options) {
+        return new ImageJob(image, widths, contrastScaleFactor, options);
+    }
+    
+    BufferedImage loadImage() throws Exception {
+        return image.call();
+    }
+    
+    public int widths() {
+        return widths;
+    }
+    
+    public float contrastScaleFactor() {
+        return contrastScaleFactor;
+    }
+    
+    public SearchOptions options() {
+        return options;
+    }
+}
@@ -2,9 +2,14 @@ package com.qiyanggeng.pictoprime4j;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
 import java.awt.image.DataBufferInt;
-import java.awt.image.RescaleOp;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.stream.IntStream;
 
 /**
  * Based on: https://github.com/IonicaBizau/pixel-class/blob/master/lib/index.js
@@ -14,37 +19,103 @@ public class ImageToAscii {
     // Make method parameter
     public static final List<String> DEFAULT_GLYPHS = List.of(" .,:;i1tfLCG08@".split(""));
     
+    private static final float ONE_THIRD = 1 / 3f;
+    private static final float INV_MAX = 1 / 255f;
+    // Images with at least this many pixels after resizing are converted a row per task
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+    
     public static String convertImageToAscii(BufferedImage image, int targetWidth, float contrastScaleFactor, List<String> glyphs) {
-        image = adjustImage(image, targetWidth, contrastScaleFactor);
-        
-        final IntARGBPixel[] pixels = getARGBPixels(image);
-        
-        StringBuilder resultBuilder = new StringBuilder();
+        final float resizeRatio = (float) targetWidth / image.getWidth();
+        final int height = Math.round(image.getHeight() * resizeRatio * 0.5f);
+        final int[] sourceX = sampledCoordinates(image.getWidth(), targetWidth);
+        final int[] sourceY = sampledCoordinates(image.getHeight(), height);
+        final PixelReader reader = PixelReader.of(image);
+        final int[] channelLevels = toChannelLevels(contrastScaleFactor, glyphs.size());
         
-        for(IntARGBPixel p: pixels) {
-            String correspondingGlyph = glyphs.get(Math.round(p.quantize(glyphs.size()).intensity));
-            resultBuilder.append(correspondingGlyph);
+        final byte[] singleByteGlyphs = toSingleByteGlyphs(glyphs);
+        if(singleByteGlyphs == null) {
+            StringBuilder resultBuilder = new StringBuilder(targetWidth * height);
+            for(int y : sourceY)
+                for(int x : sourceX)
+                    resultBuilder.append(glyphs.get(glyphIndex(reader.argb(x, y), channelLevels)));
+            return resultBuilder.toString();
         }
         
-        return resultBuilder.toString();
+        final byte[] result = new byte[targetWidth * height];
+        if(result.length >= PARALLEL_THRESHOLD)
+            IntStream.range(0, height).parallel()
+                    .forEach(row -> convertRow(reader, sourceX, sourceY[row], channelLevels, singleByteGlyphs, result, row * targetWidth));
+        else
+            for(int row = 0; row < height; row++)
+                convertRow(reader, sourceX, sourceY[row], channelLevels, singleByteGlyphs, result, row * targetWidth);
+        return new String(result, StandardCharsets.ISO_8859_1);
     }
     
     public static String convertImageToAscii(BufferedImage image) {
         return convertImageToAscii(image, image.getWidth(), 0.9f, DEFAULT_GLYPHS);
     }
     
-    private static BufferedImage adjustImage(BufferedImage image, int targetWidth, float contrastScaleFactor) {
-        BufferedImage img = image;
-        // Unify image type
-        // Possible Colored version in the future (?)
-        img = convertToIntARGB(img);
-        
-        float resizeRatio = (float) targetWidth / img.getWidth();
-        img = resize(img, targetWidth, Math.round(img.getHeight() * resizeRatio * 0.5f));
-        RescaleOp rescaleOp = new RescaleOp(contrastScaleFactor, 0, null);
-        rescaleOp.filter(img, img);
+    private static void convertRow(PixelReader reader, int[] sourceX, int y, int[] channelLevels, byte[] glyphs,
+                                   byte[] result, int offset) {
+        for(int i = 0; i < sourceX.length; i++)
+            result[offset + i] = glyphs[glyphIndex(reader.argb(sourceX[i], y), channelLevels)];
+    }
+    
+    /**
+     * The same glyph {@link IntARGBPixel#quantize(int)} picks, with the contrast and quantization of each channel
+     * looked up in channelLevels.
+     */
+    private static int glyphIndex(int pixel, int[] channelLevels) {
+        final int a = (pixel >> 24) & 0xff;
+        final int r = channelLevels[(pixel >> 16) & 0xff];
+        final int g = channelLevels[(pixel >> 8) & 0xff];
+        final int b = channelLevels[pixel & 0xff];
+        return Math.round((r + g + b) * ONE_THIRD * a * INV_MAX);
+    }
+    
+    /**
+     * For each channel value, the quantization level it ends up at once the contrast is applied.
+     * The contrast is applied the way {@link java.awt.image.RescaleOp} does it: scaled, truncated and clamped,
+     * leaving alpha untouched.
+     */
+    private static int[] toChannelLevels(float contrastScaleFactor, int levelCount) {
+        final int[] result = new int[256];
+        for(int value = 0; value < result.length; value++) {
+            int scaled = Math.min(255, Math.max(0, (int) (value * contrastScaleFactor)));
+            result[value] = Math.round((INV_MAX*scaled) * (levelCount - 1));
+        }
+        return result;
+    }
+    
+    // The glyphs as Latin-1 bytes, or null if one of them is not a single Latin-1 character
+    private static byte[] toSingleByteGlyphs(List<String> glyphs) {
+        final byte[] result = new byte[glyphs.size()];
+        for(int i = 0; i < result.length; i++) {
+            String glyph = glyphs.get(i);
+            if(glyph.length() != 1 || glyph.charAt(0) > 0xff)
+                return null;
+            result[i] = (byte) glyph.charAt(0);
+        }
+        return result;
+    }
+    
+    /**
+     * For each of the targetLength pixels along one axis of the resized image, the source pixel that nearest neighbour
+     * scaling picks for it. Rather than guess at the rounding of Java2D's scaling loops, a strip numbered 0 to
+     * sourceLength - 1 is scaled with them, so that sampling the source directly picks the same pixels as resizing
+     * it with {@link Graphics2D#drawImage} would.
+     */
+    private static int[] sampledCoordinates(int sourceLength, int targetLength) {
+        BufferedImage strip = new BufferedImage(sourceLength, 1, BufferedImage.TYPE_INT_ARGB);
+        int[] numbers = ((DataBufferInt) strip.getRaster().getDataBuffer()).getData();
+        for(int i = 0; i < numbers.length; i++)
+            numbers[i] = 0xff000000 | i;
         
-        return img;
+        BufferedImage scaled = resize(strip, targetLength, 1);
+        int[] result = ((DataBufferInt) scaled.getRaster().getDataBuffer()).getData();
+        for(int i = 0; i < result.length; i++)
+            result[i] &= 0xffffff;
+        return result;
     }
     
     private static BufferedImage convertToIntARGB(BufferedImage image) {
@@ -73,21 +144,144 @@ public class ImageToAscii {
         return resize(source, width, height, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
     }
     
-    private static IntARGBPixel[] getARGBPixels(BufferedImage image) {
-        final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
-        final int width = image.getWidth();
-        final int height = image.getHeight();
+    /**
+     * Reads single pixels as int ARGB straight from an image's data buffer, converting them the way drawing the image
+     * onto an int ARGB image does. Image types without a direct reader are converted to int ARGB first.
+     */
+    private abstract static class PixelReader {
+        abstract int argb(int x, int y);
         
-        IntARGBPixel[] result = new IntARGBPixel[height * width];
+        static PixelReader of(BufferedImage image) {
+            WritableRaster raster = image.getRaster();
+            return switch(image.getType()) {
+                case BufferedImage.TYPE_INT_ARGB -> new IntPixelReader(raster, true);
+                case BufferedImage.TYPE_INT_RGB -> new IntPixelReader(raster, false);
+                case BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR -> new InterleavedPixelReader(raster);
+                case BufferedImage.TYPE_BYTE_GRAY -> new GrayPixelReader(raster);
+                default -> new IntPixelReader(convertToIntARGB(image).getRaster(), true);
+            };
+        }
         
-        for(int i = 0; i < result.length; i++) {
-            final int a = (pixels[i] >> 24) & 0xff;
-            final int r = (pixels[i] >> 16) & 0xff;
-            final int g = (pixels[i] >> 8) & 0xff;
-            final int b = pixels[i] & 0xff;
-            result[i] = new IntARGBPixel(a, r, g, b);
+        /**
+         * The pixel as it ends up after being drawn onto a transparent int ARGB image. Drawing composites the source
+         * over the destination, which rounds the colour of translucent pixels.
+         */
+        static int drawn(int argb) {
+            final int a = argb >>> 24;
+            if(a == 0xff)
+                return argb;
+            final byte[] drawnChannels = DrawnChannels.TABLE;
+            final int row = a << 8;
+            return a << 24 | (drawnChannels[row | (argb >> 16) & 0xff] & 0xff) << 16
+                    | (drawnChannels[row | (argb >> 8) & 0xff] & 0xff) << 8 | drawnChannels[row | argb & 0xff] & 0xff;
+        }
+    }
+    
+    /**
+     * For each alpha and channel value, the channel value a pixel has after it is drawn onto a transparent int ARGB
+     * image, indexed by alpha << 8 | channel. Measured by drawing every combination with Java2D, only once an image
+     * with alpha is converted.
+     */
+    private static class DrawnChannels {
+        private static final byte[] TABLE = measure();
+        
+        private static byte[] measure() {
+            BufferedImage source = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
+            int[] pixels = ((DataBufferInt) source.getRaster().getDataBuffer()).getData();
+            for(int i = 0; i < pixels.length; i++)
+                pixels[i] = i << 16 | (i & 0xff);
+            
+            BufferedImage drawn = resize(source, 256, 256);
+            int[] drawnPixels = ((DataBufferInt) drawn.getRaster().getDataBuffer()).getData();
+            byte[] result = new byte[drawnPixels.length];
+            for(int i = 0; i < result.length; i++)
+                result[i] = (byte) drawnPixels[i];
+            return result;
+        }
+    }
+    
+    private static class IntPixelReader extends PixelReader {
+        private final int[] data;
+        private final int offset;
+        private final int scanlineStride;
+        private final boolean hasAlpha;
+        
+        private IntPixelReader(WritableRaster raster, boolean hasAlpha) {
+            SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) raster.getSampleModel();
+            DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+            this.data = buffer.getData();
+            this.scanlineStride = model.getScanlineStride();
+            this.offset = buffer.getOffset() + model.getOffset(-raster.getSampleModelTranslateX(),
+                    -raster.getSampleModelTranslateY());
+            this.hasAlpha = hasAlpha;
+        }
+        
+        @Override
+        int argb(int x, int y) {
+            int pixel = data[offset + y*scanlineStride + x];
+            return hasAlpha ? drawn(pixel) : 0xff000000 | pixel;
+        }
+    }
+    
+    private static class InterleavedPixelReader extends PixelReader {
+        private final byte[] data;
+        private final int offset;
+        private final int scanlineStride;
+        private final int pixelStride;
+        private final int red;
+        private final int green;
+        private final int blue;
+        // -1 if the image has no alpha
+        private final int alpha;
+        
+        private InterleavedPixelReader(WritableRaster raster) {
+            ComponentSampleModel model = (ComponentSampleModel) raster.getSampleModel();
+            DataBufferByte buffer = (DataBufferByte) raster.getDataBuffer();
+            int[] bandOffsets = model.getBandOffsets();
+            this.data = buffer.getData();
+            this.scanlineStride = model.getScanlineStride();
+            this.pixelStride = model.getPixelStride();
+            // getOffset already adds the offset of the first band
+            this.offset = buffer.getOffset() + model.getOffset(-raster.getSampleModelTranslateX(),
+                    -raster.getSampleModelTranslateY()) - bandOffsets[0];
+            this.red = bandOffsets[0];
+            this.green = bandOffsets[1];
+            this.blue = bandOffsets[2];
+            this.alpha = bandOffsets.length > 3 ? bandOffsets[3] : -1;
+        }
+        
+        @Override
+        int argb(int x, int y) {
+            int i = offset + y*scanlineStride + x*pixelStride;
+            int rgb = (data[i + red] & 0xff) << 16 | (data[i + green] & 0xff) << 8 | data[i + blue] & 0xff;
+            if(alpha < 0)
+                return 0xff000000 | rgb;
+            // Drawn once to convert the image to int ARGB and once more to resize it
+            return drawn(drawn((data[i + alpha] & 0xff) << 24 | rgb));
+        }
+    }
+    
+    private static class GrayPixelReader extends PixelReader {
+        private final byte[] data;
+        private final int offset;
+        private final int scanlineStride;
+        private final int pixelStride;
+        
+        private GrayPixelReader(WritableRaster raster) {
+            ComponentSampleModel model = (ComponentSampleModel) raster.getSampleModel();
+            DataBufferByte buffer = (DataBufferByte) raster.getDataBuffer();
+            this.data = buffer.getData();
+            this.scanlineStride = model.getScanlineStride();
+            this.pixelStride = model.getPixelStride();
+            this.offset = buffer.getOffset() + model.getOffset(-raster.getSampleModelTranslateX(),
+                    -raster.getSampleModelTranslateY());
+        }
+        
+        @Override
+        int argb(int x, int y) {
+            int gray = data[offset + y*scanlineStride + x*pixelStride] & 0xff;
+            return 0xff000000 | gray << 16 | gray << 8 | gray;
         }
-        return result;
     }
     
     public static class IntARGBPixel {
@@ -0,0 +1,248 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Montgomery arithmetic modulo an odd number, on raw little-endian 64-bit limbs.
+ * Values in Montgomery form are x*R mod n with R = 2^(64k), where k is the number of limbs of n.
+ * Instances keep scratch space, so they must not be shared between threads.
+ */
+class MontgomeryModulus {
+    private final long[] n;
+    private final int k;
+    // -n^-1 mod 2^64
+    private final long nPrime;
+    private final long[] scratch;
+    
+    MontgomeryModulus(BigInteger modulus) {
+        if(modulus.signum() <= 0 || !modulus.testBit(0))
+            throw new IllegalArgumentException("The modulus must be positive and odd");
+        
+        this.n = toLimbs(modulus, (modulus.bitLength() + 63) / 64);
+        this.k = n.length;
+        this.scratch = new long[2*k + 2];
+        
+        // Newton iteration for the inverse of n modulo 2^64, each step doubles the number of correct bits
+        long inverse = n[0];
+        for(int i = 0; i < 5; i++)
+            inverse *= 2 - n[0] * inverse;
+        this.nPrime = -inverse;
+    }
+    
+    int limbCount() {
+        return k;
+    }
+    
+    /**
+     * Returns 1 in Montgomery form.
+     */
+    long[] one() {
+        return toLimbs(BigInteger.ONE.shiftLeft(64*k).mod(toBigInteger(n)), k);
+    }
+    
+    /**
+     * Returns n - x, i.e. -x for x in [1, n).
+     */
+    long[] negate(long[] x) {
+        long[] result = new long[k];
+        subtract(n, x, result);
+        return result;
+    }
+    
+    /**
+     * Sets result to a*b/R mod n. The result may be one of the operands.
+     */
+    void multiply(long[] a, long[] b, long[] result) {
+        final long[] t = scratch;
+        Arrays.fill(t, 0, k + 2, 0);
+        
+        for(int i = 0; i < k; i++) {
+            final long ai = a[i];
+            long carry = 0;
+            for(int j = 0; j < k; j++) {
+                long lo = ai * b[j];
+                long hi = Math.unsignedMultiplyHigh(ai, b[j]);
+                lo += t[j];
+                if(Long.compareUnsigned(lo, t[j]) < 0)
+                    hi++;
+                lo += carry;
+                if(Long.compareUnsigned(lo, carry) < 0)
+                    hi++;
+                t[j] = lo;
+                carry = hi;
+            }
+            long sum = t[k] + carry;
+            t[k + 1] = Long.compareUnsigned(sum, carry) < 0 ? 1 : 0;
+            t[k] = sum;
+            
+            reduceStep(t);
+        }
+        finish(t, result);
+    }
+    
+    /**
+     * Sets result to a*a/R mod n. The result may be the operand.
+     * Each cross product is only computed once, which saves close to half the multiplications of multiply.
+     */
+    void square(long[] a, long[] result) {
+        final long[] t = scratch;
+        Arrays.fill(t, 0);
+        
+        // Cross products a[i]*a[j] with i < j
+        for(int i = 0; i < k; i++) {
+            final long ai = a[i];
+            long carry = 0;
+            for(int j = i + 1; j < k; j++) {
+                long lo = ai * a[j];
+                long hi = Math.unsignedMultiplyHigh(ai, a[j]);
+                lo += t[i + j];
+                if(Long.compareUnsigned(lo, t[i + j]) < 0)
+                    hi++;
+                lo += carry;
+                if(Long.compareUnsigned(lo, carry) < 0)
+                    hi++;
+                t[i + j] = lo;
+                carry = hi;
+            }
+            t[i + k] = carry;
+        }
+        
+        // Double them and add the squares a[i]^2
+        long shiftedOut = 0;
+        long carry = 0;
+        for(int i = 0; i < k; i++) {
+            long lo = a[i] * a[i];
+            long hi = Math.unsignedMultiplyHigh(a[i], a[i]);
+            
+            long low = t[2*i];
+            long high = t[2*i + 1];
+            long doubledLow = (low << 1) | shiftedOut;
+            long doubledHigh = (high << 1) | (low >>> 63);
+            shiftedOut = high >>> 63;
+            
+            long sum = doubledLow + lo;
+            long c = Long.compareUnsigned(sum, lo) < 0 ? 1 : 0;
+            sum += carry;
+            if(Long.compareUnsigned(sum, carry) < 0)
+                c++;
+            t[2*i] = sum;
+            
+            long sumHigh = doubledHigh + hi;
+            long c2 = Long.compareUnsigned(sumHigh, hi) < 0 ? 1 : 0;
+            sumHigh += c;
+            if(Long.compareUnsigned(sumHigh, c) < 0)
+                c2++;
+            t[2*i + 1] = sumHigh;
+            carry = c2;
+        }
+        t[2*k] = carry + shiftedOut;
+        
+        // Montgomery reduction of the double length product, one limb at a time
+        for(int i = 0; i < k; i++) {
+            final long m = t[i] * nPrime;
+            long c = 0;
+            for(int j = 0; j < k; j++) {
+                long lo = m * n[j];
+                long hi = Math.unsignedMultiplyHigh(m, n[j]);
+                lo += t[i + j];
+                if(Long.compareUnsigned(lo, t[i + j]) < 0)
+                    hi++;
+                lo += c;
+                if(Long.compareUnsigned(lo, c) < 0)
+                    hi++;
+                t[i + j] = lo;
+                c = hi;
+            }
+            for(int j = i + k; c != 0 && j <= 2*k; j++) {
+                t[j] += c;
+                c = Long.compareUnsigned(t[j], c) < 0 ? 1 : 0;
+            }
+        }
+        
+        // The result is t[k..2k] < 2n
+        System.arraycopy(t, k, result, 0, k);
+        if(t[2*k] != 0 || compare(result, n) >= 0)
+            subtract(result, n, result);
+    }
+    
+    /**
+     * Sets result to 2x mod n, which is the same in and out of Montgomery form. The result may be the operand.
+     */
+    void doubleValue(long[] x, long[] result) {
+        long shiftedOut = 0;
+        for(int i = 0; i < k; i++) {
+            long limb = x[i];
+            result[i] = (limb << 1) | shiftedOut;
+            shiftedOut = limb >>> 63;
+        }
+        if(shiftedOut != 0 || compare(result, n) >= 0)
+            subtract(result, n, result);
+    }
+    
+    // Adds m*n to t, where m is chosen so that the lowest limb becomes zero, and shifts t down by one limb
+    private void reduceStep(long[] t) {
+        final long m = t[0] * nPrime;
+        long lo = m * n[0];
+        long carry = Math.unsignedMultiplyHigh(m, n[0]);
+        lo += t[0];
+        if(Long.compareUnsigned(lo, t[0]) < 0)
+            carry++;
+        
+        for(int j = 1; j < k; j++) {
+            lo = m * n[j];
+            long hi = Math.unsignedMultiplyHigh(m, n[j]);
+            lo += t[j];
+            if(Long.compareUnsigned(lo, t[j]) < 0)
+                hi++;
+            lo += carry;
+            if(Long.compareUnsigned(lo, carry) < 0)
+                hi++;
+            t[j - 1] = lo;
+            carry = hi;
+        }
+        long sum = t[k] + carry;
+        t[k - 1] = sum;
+        t[k] = t[k + 1] + (Long.compareUnsigned(sum, carry) < 0 ? 1 : 0);
+    }
+    
+    // Copies t[0..k] < 2n into result, reduced below n
+    private void finish(long[] t, long[] result) {
+        System.arraycopy(t, 0, result, 0, k);
+        if(t[k] != 0 || compare(result, n) >= 0)
+            subtract(result, n, result);
+    }
+    
+    private int compare(long[] a, long[] b) {
+        for(int i = k - 1; i >= 0; i--)
+            if(a[i] != b[i])
+                return Long.compareUnsigned(a[i], b[i]);
+        return 0;
+    }
+    
+    // result = a - b, discarding the borrow out of the top limb
+    private void subtract(long[] a, long[] b, long[] result) {
+        long borrow = 0;
+        for(int i = 0; i < k; i++) {
+            long ai = a[i];
+            long diff = ai - b[i] - borrow;
+            borrow = (Long.compareUnsigned(ai, b[i]) < 0 || (ai == b[i] && borrow != 0)) ? 1 : 0;
+            result[i] = diff;
+        }
+    }
+    
+    static long[] toLimbs(BigInteger value, int limbCount) {
+        final byte[] bytes = value.toByteArray();
+        final long[] limbs = new long[limbCount];
+        for(int i = 0; i < bytes.length && i < 8*limbCount; i++)
+            limbs[i / 8] |= (bytes[bytes.length - 1 - i] & 0xffL) << (8 * (i % 8));
+        return limbs;
+    }
+    
+    static BigInteger toBigInteger(long[] limbs) {
+        final byte[] bytes = new byte[8*limbs.length + 1];
+        for(int i = 0; i < 8*limbs.length; i++)
+            bytes[bytes.length - 1 - i] = (byte) (limbs[i / 8] >>> (8 * (i % 8)));
+        return new BigInteger(bytes);
+    }
+}
@@ -0,0 +1,143 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.math.BigInteger;
+import java.util.BitSet;
+import java.util.random.RandomGenerator;
+
+/**
+ * Sieves every allowed single-digit mutation of a keyframe against the small primes at once.
+ * Replacing digit d with d' at k places from the right changes the value by (d' - d) * 10^k, so with the keyframe's
+ * residue modulo p and a running 10^k mod p, we know whether the mutation is divisible by p without building it.
+ * Only the mutations that survive every prime are handed out.
+ * When looking for Sophie Germain primes, a mutation with residue r modulo p also does not survive if 2r + 1 is
+ * divisible by p, since then its companion 2n + 1 is.
+ * A mutation of a short keyframe may be one of the small primes itself, which p divides but which is not composite.
+ */
+class NeighborhoodSieve {
+    // Keyframes of at most this many digits have values that fit in a long
+    private static final int LONG_DIGITS = 18;
+    
+    private final DigitBuffer keyFrame;
+    // Mutation m replaces the digit at mutationPosition[m] with mutationDigit[m]
+    private final int[] mutationPosition;
+    private final int[] mutationDigit;
+    // The first remaining entries are the surviving mutations that have not been handed out yet
+    private final int[] survivors;
+    private int remaining;
+    
+    /**
+     * @param replacements For each digit 0-9, the digits it may be replaced with, or null if it may not be replaced
+     * @param sophieGermain Whether 2n + 1 must also survive for a mutation n to survive
+     * @param shardIndex Only the positions p with p mod shardCount == shardIndex are mutated
+     */
+    NeighborhoodSieve(DigitBuffer keyFrame, SmallPrimeFilter filter, int[][] replacements, boolean sophieGermain,
+                      int shardIndex, int shardCount) {
+        this.keyFrame = keyFrame.copy();
+        final int length = keyFrame.length();
+        
+        int mutationCount = 0;
+        for(int i = shardIndex; i < length; i += shardCount)
+            if(keyFrame.isModifiable(i))
+                mutationCount += replacements[keyFrame.digitAt(i)].length;
+        mutationPosition = new int[mutationCount];
+        mutationDigit = new int[mutationCount];
+        for(int i = shardIndex, m = 0; i < length; i += shardCount) {
+            if(!keyFrame.isModifiable(i))
+                continue;
+            for(int replacement : replacements[keyFrame.digitAt(i)]) {
+                mutationPosition[m] = i;
+                mutationDigit[m++] = replacement;
+            }
+        }
+        
+        BitSet composite = sieve(filter, sophieGermain);
+        survivors = new int[mutationCount - composite.cardinality()];
+        for(int m = composite.nextClearBit(0); m < mutationCount; m = composite.nextClearBit(m + 1))
+            survivors[remaining++] = m;
+    }
+    
+    /**
+     * Marks every mutation that one of the small primes divides.
+     */
+    private BitSet sieve(SmallPrimeFilter filter, boolean sophieGermain) {
+        final int[] primes = filter.primes();
+        final int[] residues = filter.residues(keyFrame.toBigInteger());
+        final int length = keyFrame.length();
+        final long[] values = length <= LONG_DIGITS ? mutationValues() : null;
+        BitSet composite = new BitSet(mutationPosition.length);
+        
+        for(int j = 0; j < primes.length; j++) {
+            final int p = primes[j];
+            final int residue = residues[j];
+            // Mutations are ordered by position, so walk them from the right while raising 10^k
+            long powerOfTen = 1;
+            int position = length - 1;
+            for(int m = mutationPosition.length - 1; m >= 0; m--) {
+                for(; position > mutationPosition[m]; position--)
+                    powerOfTen = powerOfTen * 10 % p;
+                int delta = mutationDigit[m] - keyFrame.digitAt(position);
+                long mutationResidue = Math.floorMod(residue + delta * powerOfTen, p);
+                boolean divisible = mutationResidue == 0 && (values == null || values[m] != p);
+                boolean companionDivisible = sophieGermain && (2*mutationResidue + 1) % p == 0
+                        && (values == null || 2*values[m] + 1 != p);
+                if(divisible || companionDivisible)
+                    composite.set(m);
+            }
+        }
+        return composite;
+    }
+    
+    /**
+     * The value of every mutation, for a keyframe of at most LONG_DIGITS digits.
+     */
+    private long[] mutationValues() {
+        final int length = keyFrame.length();
+        final long value = keyFrame.toBigInteger().longValue();
+        long[] values = new long[mutationPosition.length];
+        long powerOfTen = 1;
+        int position = length - 1;
+        for(int m = mutationPosition.length - 1; m >= 0; m--) {
+            for(; position > mutationPosition[m]; position--)
+                powerOfTen *= 10;
+            values[m] = value + (mutationDigit[m] - keyFrame.digitAt(position)) * powerOfTen;
+        }
+        return values;
+    }
+    
+    /**
+     * Returns a random surviving mutation that has not been returned before, or -1 once they are all used up.
+     */
+    int next(RandomGenerator random) {
+        if(remaining == 0)
+            return -1;
+        
+        int pick = random.nextInt(remaining);
+        int m = survivors[pick];
+        survivors[pick] = survivors[--remaining];
+        survivors[remaining] = m;
+        return m;
+    }
+    
+    /**
+     * The fingerprint of the mutation, see {@link DigitBuffer#fingerprint()}.
+     */
+    long fingerprint(int mutation) {
+        return keyFrame.fingerprintWith(mutationPosition[mutation], mutationDigit[mutation]);
+    }
+    
+    BigInteger toBigInteger(int mutation) {
+        return keyFrame.toBigIntegerWith(mutationPosition[mutation], mutationDigit[mutation]);
+    }
+    
+    boolean isExhausted() {
+        return remaining == 0;
+    }
+    
+    int mutationCount() {
+        return mutationPosition.length;
+    }
+    
+    int survivorCount() {
+        return survivors.length;
+    }
+}
@@ -1,26 +1,68 @@
 package com.qiyanggeng.pictoprime4j;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.math.BigInteger;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
 
 public class Pictoprime {
     public static String create(String filePath, int widths, float contrastScaleFactor, boolean sophie) throws IOException {
-        BufferedImage image;
+        return create(loadImage(filePath, widths), widths, contrastScaleFactor, sophie);
+    }
+    
+    /**
+     * Decodes the image at no more than about twice the resolution needed to convert it to the given width.
+     * The reader skips the rows and columns in between (source subsampling), so only the smaller image is ever held in
+     * memory, however large the file is.
+     * @param widths The width the image will be converted to, or 0 to decode it at full resolution
+     */
+    static BufferedImage loadImage(String filePath, int widths) throws IOException {
         URL imageUrl = Pictoprime.class.getClassLoader().getResource(filePath);
 
         if(imageUrl == null)
             throw new RuntimeException("Image URL from file path is null");
 
-        image = ImageIO.read(imageUrl);
-
-        if(image == null)
-            throw new RuntimeException("Loaded image is null");
-        
-        return create(image, widths, contrastScaleFactor, sophie);
+        return loadImage(imageUrl, widths);
+    }
+    
+    /**
+     * Like {@link #loadImage(String, int)}, for an image anywhere rather than on the class path.
+     */
+    static BufferedImage loadImage(URL imageUrl, int widths) throws IOException {
+        try(InputStream stream = imageUrl.openStream();
+            ImageInputStream input = ImageIO.createImageInputStream(stream)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if(!readers.hasNext())
+                throw new RuntimeException("Loaded image is null");
+            
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                // The same period on both axes keeps the aspect ratio, and the width is what limits it
+                int period = widths > 0 ? Math.max(1, reader.getWidth(0) / widths) : 1;
+                param.setSourceSubsampling(period, period, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
     }
     
     public static String create(String filePath) throws IOException {
@@ -28,11 +70,13 @@ public class Pictoprime {
     }
 
     public static String create(BufferedImage image, int widths, float contrastScaleFactor, boolean sophie) {
+        long conversionStart = System.nanoTime();
         String imageNum = ImageToAscii.convertImageToAscii(image, widths, contrastScaleFactor, List.of("8049922777".split("")));
+        Duration conversionTime = Duration.ofNanos(System.nanoTime() - conversionStart);
 
         System.out.println(formatPrime(imageNum, widths));
 
-        String primeImage = PrimeSearch.findPrime(new BigInteger(imageNum), sophie);
+        String primeImage = PrimeSearch.findPrime(new BigInteger(imageNum), conversionTime, sophie);
 
         return formatPrime(primeImage, widths);
     }
@@ -41,7 +85,122 @@ public class Pictoprime {
         return create(image, 32, 0.9f, false);
     }
     
+    /**
+     * Like {@link #create(String, int, float, boolean)}, but searches with the given options and writes the prime to
+     * out, see {@link #writePrime(BigInteger, int, Writer)}. Nothing is printed, neither the unsearched number nor the
+     * report, which for numbers of many thousands of digits saves writing them out twice more.
+     * @return The result, whose prime has been written
+     * @throws TimeoutException If the deadline of the options passed
+     */
+    public static PrimeResult create(String filePath, int widths, float contrastScaleFactor, SearchOptions options,
+                                     Writer out) throws IOException, TimeoutException {
+        return create(loadImage(filePath, widths), widths, contrastScaleFactor, options, out);
+    }
+    
+    public static PrimeResult create(BufferedImage image, int widths, float contrastScaleFactor, SearchOptions options,
+                                     Writer out) throws IOException, TimeoutException {
+        long conversionStart = System.nanoTime();
+        BigInteger original = toNumber(image, widths, contrastScaleFactor);
+        Duration conversionTime = Duration.ofNanos(System.nanoTime() - conversionStart);
+        
+        PrimeResult result = PrimeSearch.search(original, conversionTime, options);
+        writePrime(result.prime(), widths, out);
+        return result;
+    }
+    
+    /**
+     * Like {@link #create(String, int, float, boolean)}, but returns at once, loads the image on a virtual thread
+     * and searches on an engine thread. Nothing is printed; use {@link #formatPrime(String, int)} on the result.
+     */
+    public static CompletableFuture<PrimeResult> createAsync(String filePath, int widths, float contrastScaleFactor,
+                                                             SearchOptions options) {
+        return PrimeSearch.findPrimeAsync(() -> toNumber(loadImage(filePath, widths), widths, contrastScaleFactor), options);
+    }
+    
+    /**
+     * Like {@link #create(BufferedImage, int, float, boolean)}, but returns at once and searches on an engine thread.
+     * Nothing is printed; use {@link #formatPrime(String, int)} on the result.
+     */
+    public static CompletableFuture<PrimeResult> createAsync(BufferedImage image, int widths, float contrastScaleFactor,
+                                                             SearchOptions options) {
+        return PrimeSearch.findPrimeAsync(() -> toNumber(image, widths, contrastScaleFactor), options);
+    }
+    
+    /**
+     * Starts a search for every image at once and returns their futures in the same order.
+     * The images are loaded and converted on virtual threads, and the searches share the testers of the default
+     * engine in proportion to their priorities instead of each assuming the whole machine,
+     * see {@link SearchOptions#withPriority(int)}.
+     */
+    public static List<CompletableFuture<PrimeResult>> createAll(Collection<ImageJob> jobs) {
+        List<CompletableFuture<PrimeResult>> results = new ArrayList<>(jobs.size());
+        for(ImageJob job : jobs)
+            results.add(PrimeSearch.findPrimeAsync(() -> toNumber(job.loadImage(), job.widths(), job.contrastScaleFactor()),
+                    job.options()));
+        return results;
+    }
+    
+    static BigInteger toNumber(BufferedImage image, int widths, float contrastScaleFactor) {
+        return new BigInteger(ImageToAscii.convertImageToAscii(image, widths, contrastScaleFactor, List.of("8049922777".split(""))));
+    }
+    
+    /**
+     * Breaks the digits into rows of the given width, each full row followed by a line break.
+     */
     public static String formatPrime(String prime, int width) {
-        return prime.replaceAll(String.format(".{%d}", width),  "$0\n");
+        StringBuilder formatted = new StringBuilder(DigitGrid.length(prime, width));
+        DigitGrid.appendTo(formatted, prime, width);
+        return formatted.toString();
+    }
+    
+    /**
+     * Writes the digits to out in the layout of {@link #formatPrime(String, int)}, a chunk of rows at a time, without
+     * building the formatted string. The writer is neither flushed nor closed.
+     */
+    public static void writePrime(String prime, int width, Writer out) throws IOException {
+        DigitGrid.write(prime, width, out);
+    }
+    
+    /**
+     * Like {@link #writePrime(String, int, Writer)}, as ASCII bytes.
+     */
+    public static void writePrime(String prime, int width, OutputStream out) throws IOException {
+        DigitGrid.write(prime, width, toByteSink(out));
+    }
+    
+    /**
+     * Like {@link #writePrime(String, int, Writer)}, as ASCII bytes, for instance to a
+     * {@link java.nio.channels.FileChannel}.
+     */
+    public static void writePrime(String prime, int width, WritableByteChannel out) throws IOException {
+        DigitGrid.write(prime, width, toByteSink(out));
+    }
+    
+    /**
+     * Like {@link #writePrime(String, int, Writer)}, converting the prime to decimal a piece at a time as the rows
+     * are written, so that its digits are never held as one string either.
+     */
+    public static void writePrime(BigInteger prime, int width, Writer out) throws IOException {
+        DigitGrid.write(prime, width, out);
+    }
+    
+    public static void writePrime(BigInteger prime, int width, OutputStream out) throws IOException {
+        DigitGrid.write(prime, width, toByteSink(out));
+    }
+    
+    public static void writePrime(BigInteger prime, int width, WritableByteChannel out) throws IOException {
+        DigitGrid.write(prime, width, toByteSink(out));
+    }
+    
+    private static DigitGrid.ByteSink toByteSink(OutputStream out) {
+        return (chunk, length) -> out.write(chunk, 0, length);
+    }
+    
+    private static DigitGrid.ByteSink toByteSink(WritableByteChannel out) {
+        return (chunk, length) -> {
+            ByteBuffer buffer = ByteBuffer.wrap(chunk, 0, length);
+            while(buffer.hasRemaining())
+                out.write(buffer);
+        };
     }
 }
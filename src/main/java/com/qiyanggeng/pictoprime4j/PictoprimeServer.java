@@ -0,0 +1,256 @@
+package com.qiyanggeng.pictoprime4j;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Keeps a search engine, the compiled search code and the image decoders warm between jobs, and takes the jobs over a
+ * local socket, so converting a small image takes milliseconds instead of a JVM startup. It listens on the loopback
+ * address only.
+ * Every request and every answer is one line of ASCII, the fields separated by spaces:
+ * <pre>
+ * CREATE widths contrastScaleFactor sophie path    converts the image file at the path, which may contain spaces
+ * FIND sophie number                              searches from the number
+ * STATS                                           the stats of the engine
+ * PING
+ * </pre>
+ * answered with
+ * <pre>
+ * PRIME prime companion searchNanos               companion is - if there is none
+ * STATS stats                                     the fields of PrimeSearchStats, durations in nanoseconds
+ * PONG
+ * FAILED message
+ * </pre>
+ * A connection may send any number of requests, which are answered in order. Connections are served at the same time
+ * and share the engine's testers. Every search fails with a TimeoutException once it has run for the server's request
+ * timeout, and is cancelled as soon as its connection closes, so a client should keep its side of the connection open
+ * until it has its answers.
+ * <pre>
+ * java -cp ... com.qiyanggeng.pictoprime4j.PictoprimeServer [port [timeoutSeconds]]
+ * </pre>
+ * With {@code --warm-up} instead of a port, it only warms up and exits, which makes a training run for a class data
+ * sharing archive.
+ */
+public class PictoprimeServer implements AutoCloseable {
+    public static final int DEFAULT_PORT = 7331;
+    public static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofMinutes(1);
+    // Small enough to take about a second, enough for the search code to be compiled
+    private static final int WARM_UP_SEARCHES = 64;
+    // Queued after the last request of a connection, a line can never be a line break
+    private static final String HUNG_UP = "\n";
+    
+    private final ServerSocket server;
+    private final PrimeSearchEngine engine;
+    private final Duration requestTimeout;
+    
+    private PictoprimeServer(ServerSocket server, PrimeSearchEngine engine, Duration requestTimeout) {
+        this.server = server;
+        this.engine = engine;
+        this.requestTimeout = requestTimeout;
+    }
+    
+    public static PictoprimeServer start(int port) throws IOException {
+        return start(port, new PrimeSearchEngine());
+    }
+    
+    public static PictoprimeServer start(int port, PrimeSearchEngine engine) throws IOException {
+        return start(port, engine, DEFAULT_REQUEST_TIMEOUT);
+    }
+    
+    /**
+     * Warms up and then listens on the port, until closed. Closing the server also closes the engine.
+     * @param port The port, or 0 for any free one, see {@link #port()}
+     * @param requestTimeout How long a search may run before it fails
+     */
+    public static PictoprimeServer start(int port, PrimeSearchEngine engine, Duration requestTimeout)
+            throws IOException {
+        if(requestTimeout.isNegative() || requestTimeout.isZero())
+            throw new IllegalArgumentException("requestTimeout must be positive: " + requestTimeout);
+        warmUp(engine);
+        PictoprimeServer pictoprimeServer = new PictoprimeServer(
+                new ServerSocket(port, 50, InetAddress.getLoopbackAddress()), engine, requestTimeout);
+        // Not a daemon, so that the server keeps the JVM running
+        Thread.ofPlatform().name("pictoprime-server").start(pictoprimeServer::accept);
+        return pictoprimeServer;
+    }
+    
+    public int port() {
+        return server.getLocalPort();
+    }
+    
+    /**
+     * Runs everything a request goes through on small images: a PNG is decoded, and the conversion, the sieve, the
+     * primality tests and the companion search run often enough to be compiled.
+     */
+    static void warmUp(PrimeSearchEngine engine) throws IOException {
+        BufferedImage image = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+        for(int y = 0; y < image.getHeight(); y++)
+            for(int x = 0; x < image.getWidth(); x++)
+                image.setRGB(x, y, (x*4 << 16) | (y*5 << 8) | (x + y)*2);
+        Path file = Files.createTempFile("pictoprime-warm-up", ".png");
+        try {
+            ImageIO.write(image, "png", file.toFile());
+            for(int i = 0; i < WARM_UP_SEARCHES; i++) {
+                int widths = 8 << (i % 2);
+                BigInteger number = Pictoprime.toNumber(Pictoprime.loadImage(file.toUri().toURL(), widths), widths,
+                        0.9f);
+                try {
+                    PrimeSearch.search(engine, number, Duration.ZERO, SearchOptions.defaults().withSophie(i % 8 == 0),
+                            null);
+                } catch(TimeoutException exception) {
+                    // There is no deadline
+                    throw new IllegalStateException(exception);
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+    
+    private void accept() {
+        try {
+            while(true) {
+                Socket socket = server.accept();
+                Thread.ofVirtual().name("pictoprime-server-connection").start(() -> serve(socket));
+            }
+        } catch(SocketException exception) {
+            // The server was closed
+        } catch(IOException exception) {
+            exception.printStackTrace();
+        }
+    }
+    
+    /**
+     * Answers the requests of a connection in order. They are read on a thread of their own, so that the client
+     * hanging up is noticed while a search is running, and cancels it.
+     */
+    private void serve(Socket socket) {
+        final CancellationToken hungUp = new CancellationToken();
+        final BlockingQueue<String> requests = new LinkedBlockingQueue<>();
+        try(socket;
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+                    StandardCharsets.ISO_8859_1))) {
+            // Not closed here, closing the socket ends the reader's readLine
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.ISO_8859_1));
+            Thread.ofVirtual().name("pictoprime-server-reader").start(() -> read(in, requests, hungUp));
+            String request;
+            while(!(request = requests.take()).equals(HUNG_UP)) {
+                out.write(answer(request, hungUp));
+                out.newLine();
+                out.flush();
+            }
+        } catch(IOException ignored) {
+            // The client went away
+        } catch(InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } finally {
+            hungUp.cancel();
+        }
+    }
+    
+    /**
+     * Queues the requests of a connection until it closes or breaks, then cancels the searches still running for it.
+     */
+    private static void read(BufferedReader in, BlockingQueue<String> requests, CancellationToken hungUp) {
+        try {
+            String request;
+            while((request = in.readLine()) != null)
+                requests.add(request);
+        } catch(IOException ignored) {
+            // The connection broke
+        } finally {
+            hungUp.cancel();
+            requests.add(HUNG_UP);
+        }
+    }
+    
+    /**
+     * @param hungUp Cancelled once the client hangs up, which stops the search
+     */
+    private String answer(String request, CancellationToken hungUp) {
+        String[] fields = request.split(" ", 5);
+        try {
+            return switch(fields[0]) {
+                case "CREATE" -> {
+                    int widths = Integer.parseInt(fields[1]);
+                    float contrastScaleFactor = Float.parseFloat(fields[2]);
+                    URL image = Path.of(fields[4]).toUri().toURL();
+                    yield toAnswer(engine.findPrimeAsync(() -> Pictoprime.toNumber(Pictoprime.loadImage(image, widths),
+                            widths, contrastScaleFactor), options(fields[3], hungUp)));
+                }
+                case "FIND" -> toAnswer(engine.findPrimeAsync(new BigInteger(fields[2]), options(fields[1], hungUp)));
+                case "STATS" -> "STATS " + ShardProtocol.encode(engine.stats());
+                case "PING" -> "PONG";
+                default -> "FAILED Unknown request: " + fields[0];
+            };
+        } catch(IOException | RuntimeException exception) {
+            return failed(exception);
+        }
+    }
+    
+    private SearchOptions options(String sophie, CancellationToken hungUp) {
+        return SearchOptions.defaults()
+                .withSophie(Boolean.parseBoolean(sophie))
+                .withTimeout(requestTimeout)
+                .withCancellationToken(hungUp);
+    }
+    
+    private static String toAnswer(CompletableFuture<PrimeResult> search) {
+        try {
+            PrimeResult result = search.join();
+            return "PRIME " + result.prime() + " " + (result.sophieGermain() == null ? "-" : result.sophieGermain())
+                    + " " + result.elapsed().toNanos();
+        } catch(CompletionException exception) {
+            return failed(exception.getCause());
+        }
+    }
+    
+    private static String failed(Throwable throwable) {
+        return ("FAILED " + throwable).replace('\n', ' ').replace('\r', ' ');
+    }
+    
+    /**
+     * Stops listening and closes the engine. Requests still being answered fail.
+     */
+    @Override
+    public void close() throws IOException {
+        server.close();
+        engine.close();
+    }
+    
+    public static void main(String[] args) throws IOException {
+        if(args.length == 1 && args[0].equals("--warm-up")) {
+            try(PrimeSearchEngine engine = new PrimeSearchEngine()) {
+                warmUp(engine);
+            }
+            return;
+        }
+        
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        Duration requestTimeout = args.length > 1 ? Duration.ofSeconds(Long.parseLong(args[1]))
+                : DEFAULT_REQUEST_TIMEOUT;
+        PictoprimeServer server = start(port, new PrimeSearchEngine(), requestTimeout);
+        System.out.println("Listening on port " + server.port());
+    }
+}
@@ -0,0 +1,53 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.math.BigInteger;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A probabilistic primality test.
+ * The search screens every candidate with a cheap tester and only confirms the winner with a thorough one,
+ * see {@link PrimeSearchEngine#PrimeSearchEngine(int, PrimalityTester, PrimalityTester)}.
+ */
+@FunctionalInterface
+public interface PrimalityTester {
+    /**
+     * Returns false if the value is definitely composite, and true if it is probably prime.
+     */
+    boolean isProbablePrime(BigInteger value);
+    
+    /**
+     * Like {@link #isProbablePrime(BigInteger)}, but gives up with a {@link CancellationException} soon after
+     * cancelled starts returning true. Implementations that cannot stop midway run to completion.
+     */
+    default boolean isProbablePrime(BigInteger value, BooleanSupplier cancelled) {
+        return isProbablePrime(value);
+    }
+    
+    /**
+     * A strong probable prime test to base 2, i.e. a single Miller-Rabin round with the base fixed to 2.
+     * Meant for screening candidates: composites are rejected for the price of one modular exponentiation.
+     * Past the size that BigInteger.modPow hands to HotSpot intrinsics (about 4900 digits), the exponentiation is a
+     * Montgomery squaring ladder where multiplying by the base is only a doubling.
+     */
+    static PrimalityTester strongBaseTwo() {
+        return StrongProbablePrimeTester.INSTANCE;
+    }
+    
+    /**
+     * The Baillie-PSW test: a strong probable prime test to base 2 followed by a strong Lucas probable prime test.
+     * No composite is known to pass it.
+     * @param certainty Runs extra Miller-Rabin rounds with random bases on top, so that a composite passes with a
+     *                  probability below 2^-certainty even if one is ever found to pass Baillie-PSW. 0 for none.
+     */
+    static PrimalityTester bailliePSW(int certainty) {
+        return new BailliePSWTester(certainty);
+    }
+    
+    /**
+     * Defers to {@link BigInteger#isProbablePrime(int)}.
+     */
+    static PrimalityTester bigInteger(int certainty) {
+        return value -> value.isProbablePrime(certainty);
+    }
+}
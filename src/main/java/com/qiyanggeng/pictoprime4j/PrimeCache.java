@@ -0,0 +1,173 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the primes found for numbers that were searched before, see {@link SearchOptions#withCache(PrimeCache)}.
+ * Entries are keyed on a hash of the original number and the digit modification settings, so a changed settings.json
+ * never returns a prime that could not have been found with it.
+ * The most recently used entries are kept in memory. A cache opened on a file also appends every entry to it, one line
+ * per entry, and reads back from it the entries that no longer fit in memory, also after a restart.
+ */
+public class PrimeCache implements Closeable {
+    private final LinkedHashMap<String, Entry> memory;
+    private final FileChannel file;
+    // Where each entry's line starts in the file, and how long it is
+    private final Map<String, long[]> fileIndex = new HashMap<>();
+    private long hits;
+    private long fileHits;
+    private long misses;
+    private long evictions;
+    
+    /**
+     * A cache that only lives in memory.
+     * @param capacity The number of entries kept in memory
+     */
+    public PrimeCache(int capacity) {
+        this(capacity, null);
+    }
+    
+    private PrimeCache(int capacity, FileChannel file) {
+        if(capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        this.file = file;
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if(size() <= capacity)
+                    return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+    
+    /**
+     * Opens a cache backed by a file, creating the file if it does not exist.
+     * A line left incomplete by a crash is cut off.
+     * @param capacity The number of entries kept in memory, the file holds all of them
+     */
+    public static PrimeCache open(Path path, int capacity) throws IOException {
+        FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            PrimeCache cache = new PrimeCache(capacity, file);
+            cache.loadIndex();
+            return cache;
+        } catch(IOException | RuntimeException exception) {
+            file.close();
+            throw exception;
+        }
+    }
+    
+    private void loadIndex() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        StringBuilder key = new StringBuilder();
+        boolean readingKey = true;
+        long lineStart = 0;
+        long position = 0;
+        while(file.read(buffer, position) > 0) {
+            buffer.flip();
+            while(buffer.hasRemaining()) {
+                byte b = buffer.get();
+                position++;
+                if(b == '\n') {
+                    fileIndex.put(key.toString(), new long[] {lineStart, position - lineStart});
+                    key.setLength(0);
+                    readingKey = true;
+                    lineStart = position;
+                } else if(readingKey) {
+                    if(b == ' ')
+                        readingKey = false;
+                    else
+                        key.append((char) b);
+                }
+            }
+            buffer.clear();
+        }
+        if(lineStart < position)
+            file.truncate(lineStart);
+    }
+    
+    synchronized Entry get(String key) {
+        Entry entry = memory.get(key);
+        if(entry != null) {
+            hits++;
+            return entry;
+        }
+        
+        long[] location = fileIndex.get(key);
+        if(location != null) {
+            try {
+                entry = readEntry(location[0], (int) location[1]);
+                memory.put(key, entry);
+                hits++;
+                fileHits++;
+                return entry;
+            } catch(IOException exception) {
+                exception.printStackTrace();
+            }
+        }
+        misses++;
+        return null;
+    }
+    
+    synchronized void put(String key, Entry entry) {
+        memory.put(key, entry);
+        if(file == null || fileIndex.containsKey(key))
+            return;
+        
+        String line = key + ' ' + entry.prime() + ' ' + (entry.sophieGermain() == null ? "-" : entry.sophieGermain()) + '\n';
+        ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.ISO_8859_1));
+        try {
+            long start = file.size();
+            for(long position = start; buffer.hasRemaining(); )
+                position += file.write(buffer, position);
+            fileIndex.put(key, new long[] {start, buffer.limit()});
+        } catch(IOException exception) {
+            // The entry still lives in memory
+            exception.printStackTrace();
+        }
+    }
+    
+    private Entry readEntry(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while(buffer.hasRemaining())
+            if(file.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("The cache file ends in the middle of an entry");
+        
+        String[] fields = new String(buffer.array(), 0, length - 1, StandardCharsets.ISO_8859_1).split(" ");
+        return new Entry(new BigInteger(fields[1]), fields[2].equals("-") ? null : new BigInteger(fields[2]));
+    }
+    
+    public synchronized Stats stats() {
+        return new Stats(hits, fileHits, misses, evictions, memory.size(), file == null ? memory.size() : fileIndex.size());
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        if(file != null)
+            file.close();
+    }
+    
+    /**
+     * @param hits The number of lookups that found an entry, in memory or in the file
+     * @param fileHits The number of hits that had to read the entry from the file
+     * @param misses The number of lookups that found nothing
+     * @param evictions The number of entries dropped from memory to make room
+     * @param memorySize The number of entries in memory
+     * @param size The number of entries in the cache
+     */
+    public record Stats(long hits, long fileHits, long misses, long evictions, int memorySize, int size) {}
+    
+    record Entry(BigInteger prime, BigInteger sophieGermain) {}
+}
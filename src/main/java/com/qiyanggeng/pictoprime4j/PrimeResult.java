@@ -0,0 +1,19 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.math.BigInteger;
+import java.time.Duration;
+
+/**
+ * The outcome of a successful search.
+ * @param prime The prime found
+ * @param sophieGermain The companion number found for the prime, or null if none was asked for or found
+ * @param attempts The number of batches of candidates generated, 0 if the prime came from a cache or from a
+ *                 {@link ShardCoordinator}
+ * @param distinctTested The number of distinct candidates generated, 0 if the prime came from a cache
+ * @param simultaneous The number of candidates tested at the same time
+ * @param elapsed The time the search took, not counting the companion number
+ * @param stats Where the search spent its work
+ */
+public record PrimeResult(BigInteger prime, BigInteger sophieGermain, int attempts, int distinctTested,
+                          int simultaneous, Duration elapsed, PrimeSearchStats stats) {
+}
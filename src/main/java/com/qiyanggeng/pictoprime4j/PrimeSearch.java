@@ -3,107 +3,414 @@ package com.qiyanggeng.pictoprime4j;
 import com.google.gson.Gson;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigInteger;
-import java.net.URISyntaxException;
-import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.random.RandomGenerator;
 import java.util.stream.Collectors;
 
 public class PrimeSearch {
-    private static final Random RANDOM = new Random();
-    
-    private static final List<BigInteger> SMALL_PRIMES = generatePrimes(17389)
-            .stream().map(BigInteger::valueOf).toList();
+    private static final SmallPrimeFilter SMALL_PRIMES = SieveDepth.filter(SieveDepth.DEFAULT_BOUND);
     
     private static final Settings settings = loadSettings("settings.json");
     private static final Map<Character, Character[]> ALLOWED_MODIFICATIONS = settings.getAllowedModifications();
     private static final Map<Character, String> LAST_DIGIT_SUBSTITUTION = settings.getLastDigitModification();
+    // ALLOWED_MODIFICATIONS indexed by digit value, null for digits that may not be modified
+    private static final int[][] REPLACEMENTS = toReplacementTable(ALLOWED_MODIFICATIONS);
+    private static final boolean[] MODIFIABLE_DIGITS = toModifiableDigits(REPLACEMENTS);
+    private static final int[] ALL_DIGITS = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9};
+    // Part of every cache key, so that cached primes are only reused under the settings that found them
+    private static final String SETTINGS_FINGERPRINT = toFingerprint(ALLOWED_MODIFICATIONS, LAST_DIGIT_SUBSTITUTION);
     
     private static final int CORE_COUNT = Runtime.getRuntime().availableProcessors();
-    private static final ExecutorService executors = Executors.newFixedThreadPool(CORE_COUNT);
+    // The batch size of seeded searches, which must not depend on the engine
+    private static final int SEEDED_BATCH_SIZE = 8;
     
     /**
-     * Searches for a prime number by adjusting the original number.
+     * Searches for a prime number by adjusting the original number, using an engine shared by all callers.
      */
     public static String findPrime(BigInteger original, boolean sophie) {
+        return findPrime(DefaultEngine.INSTANCE, original, Duration.ZERO, sophie);
+    }
+    
+    /**
+     * @param conversionTime The time it took to convert the image to the original number, reported in the stats
+     */
+    static String findPrime(BigInteger original, Duration conversionTime, boolean sophie) {
+        return findPrime(DefaultEngine.INSTANCE, original, conversionTime, sophie);
+    }
+    
+    /**
+     * Runs the search on the calling thread and the engine shared by all callers, and prints nothing.
+     */
+    static PrimeResult search(BigInteger original, Duration conversionTime, SearchOptions options)
+            throws TimeoutException {
+        return search(DefaultEngine.INSTANCE, original, conversionTime, options, null);
+    }
+    
+    static String findPrime(PrimeSearchEngine engine, BigInteger original, Duration conversionTime, boolean sophie) {
+        PrimeResult result;
+        try {
+            result = search(engine, original, conversionTime, SearchOptions.defaults().withSophie(sophie), null);
+        } catch(TimeoutException exception) {
+            // There is no deadline
+            throw new IllegalStateException(exception);
+        }
+        System.out.println(formatReport(result));
+        
+        return result.prime().toString();
+    }
+    
+    /**
+     * Searches for a prime number by adjusting the original number, without blocking the calling thread,
+     * using the engine shared by all callers.
+     */
+    public static CompletableFuture<PrimeResult> findPrimeAsync(BigInteger original, SearchOptions options) {
+        return DefaultEngine.INSTANCE.findPrimeAsync(original, options);
+    }
+    
+    static CompletableFuture<PrimeResult> findPrimeAsync(Callable<BigInteger> original, SearchOptions options) {
+        return DefaultEngine.INSTANCE.findPrimeAsync(original, options);
+    }
+    
+    public static PrimeResult resume(Path checkpoint) throws IOException, TimeoutException {
+        return resume(checkpoint, SearchOptions.defaults());
+    }
+    
+    /**
+     * Goes on with the search saved in the checkpoint, see {@link SearchOptions#withCheckpoint(Path, Duration)},
+     * using the engine shared by all callers.
+     * The options that decide which candidates are searched, the companion, seed, shard and sieve bound, are the ones
+     * the search started with, the others come from the options given. The search keeps saving its state to the same
+     * file, unless the options name another.
+     * @throws IOException If the file is not a checkpoint, is damaged or was written with other settings
+     */
+    public static PrimeResult resume(Path checkpoint, SearchOptions options) throws IOException, TimeoutException {
+        return resume(DefaultEngine.INSTANCE, checkpoint, options);
+    }
+    
+    static PrimeResult resume(PrimeSearchEngine engine, Path checkpoint, SearchOptions options)
+            throws IOException, TimeoutException {
+        SearchCheckpoint resumed = SearchCheckpoint.read(checkpoint);
+        if(!resumed.settings().equals(SETTINGS_FINGERPRINT))
+            throw new IOException("The checkpoint was written with other digit modification settings: " + checkpoint);
+        
+        SearchOptions resumedOptions = options.withSophie(resumed.sophie())
+                .withSophieGermainPair(resumed.sophieGermainPair())
+                .withSeed(resumed.seed())
+                .withShard(resumed.shardIndex(), resumed.shardCount())
+                .withSieveBound(resumed.fixedSieveBound());
+        if(options.checkpoint() == null)
+            resumedOptions = resumedOptions.withCheckpoint(checkpoint, options.checkpointInterval());
+        return search(engine, resumed.original(), Duration.ZERO, resumedOptions, null, resumed);
+    }
+    
+    /**
+     * Runs the search on the calling thread until a prime is found or the search is stopped.
+     * @param conversionTime The time it took to convert the image to the original number, reported in the stats
+     * @param token An extra token that also cancels the search, or null
+     * @throws TimeoutException If the deadline passed
+     * @throws java.util.concurrent.CancellationException If the search was cancelled
+     */
+    static PrimeResult search(PrimeSearchEngine engine, BigInteger original, Duration conversionTime,
+                              SearchOptions options, CancellationToken token) throws TimeoutException {
+        return search(engine, original, conversionTime, options, token, null);
+    }
+    
+    /**
+     * @param resumed The checkpoint the search goes on from, or null to start it from the original
+     */
+    private static PrimeResult search(PrimeSearchEngine engine, BigInteger original, Duration conversionTime,
+                                      SearchOptions options, CancellationToken token, SearchCheckpoint resumed)
+            throws TimeoutException {
         long startTime = System.nanoTime();
+        SearchEvents.Search event = new SearchEvents.Search();
+        event.begin();
+        
+        PrimeCache cache = options.cache();
+        String cacheKey = null;
+        if(cache != null) {
+            cacheKey = cacheKey(original, options);
+            PrimeCache.Entry entry = cache.get(cacheKey);
+            if(entry != null) {
+                SearchCounters counters = new SearchCounters(null);
+                counters.converted(conversionTime.toNanos());
+                counters.searched(System.nanoTime() - startTime);
+                PrimeSearchStats stats = counters.toStats();
+                commit(event, original.bitLength(), "cached", stats);
+                return new PrimeResult(entry.prime(), entry.sophieGermain(), 0, 0, engine.testerCount(),
+                        stats.searchTime(), stats);
+            }
+        }
+        
+        DigitBuffer originalDigits = resumed != null ? new DigitBuffer(resumed.originalDigits(), MODIFIABLE_DIGITS)
+                : toKeyFrame(original, options.sophieGermainPair());
+        if(!hasModifiablePosition(originalDigits, options.shardIndex(), options.shardCount()))
+            throw new IllegalArgumentException("No digit of " + original + " that the search may change"
+                    + (options.shardCount() > 1 ? " falls in shard " + options.shardIndex() : ""));
+        // Keyframe changes and candidate picks draw from streams of their own, so the keyframes a search goes through
+        // do not depend on how many candidates it drew from each
+        final long rootSeed = resumed != null ? resumed.rootSeed()
+                : options.seed() != null ? options.seed() : new SplittableRandom().nextLong();
+        SplittableRandom random = new SplittableRandom(rootSeed);
+        ReplayableRandom keyFrameRandom = new ReplayableRandom(random.split(),
+                resumed != null ? resumed.keyFrameDraws() : 0);
+        ReplayableRandom candidateRandom = new ReplayableRandom(random.split(),
+                resumed != null ? resumed.candidateDraws() : 0);
+        // Rekeying is checked between batches, so seeded searches use the same batches on every engine
+        int batchSize = options.seed() != null ? SEEDED_BATCH_SIZE : engine.testerCount();
         
-        original = swapLastDigit(original);
+        DigitBuffer keyFrame = resumed != null ? new DigitBuffer(resumed.keyFrame(), MODIFIABLE_DIGITS)
+                : originalDigits;
+        int attempts = resumed != null ? resumed.attempts() : 0;
+        int failedViable = resumed != null ? resumed.failedViable() : 0;
         
-        BigInteger keyFrame = original;
-        int attempts = 0;
-        int failedViable = 0;
+        TestedCandidates tested = resumed != null ? resumed.tested() : new TestedCandidates();
+        int rekeyAt = keyFrame.length();
         
-        Set<BigInteger> tested = new HashSet<>();
-        int rekeyAt = keyFrame.toString().length();
+        ProgressListener listener = options.progressListener();
+        long progressIntervalNanos = options.progressInterval().toNanos();
+        long nextProgress = startTime + progressIntervalNanos;
+        
+        // The search time of a resumed search includes the time searched before the checkpoint
+        long searchedBefore = resumed != null ? resumed.stats().searchTime().toNanos() : 0;
+        Path checkpointPath = options.checkpoint();
+        long checkpointIntervalNanos = options.checkpointInterval().toNanos();
+        long nextCheckpoint = startTime + checkpointIntervalNanos;
+        Thread checkpointWriter = null;
         
         RekeyChecker checker = new RekeyChecker(rekeyAt, 4*rekeyAt, 160);
-        while(true) {
-            List<BigInteger> tests = generateTests(tested, keyFrame);
-            
+        if(resumed != null)
+            checker.restore(resumed.rekeyCheck(), resumed.restartCheck(), resumed.degenerateCheck());
+        BigInteger prime;
+        PrimeSearchStats stats;
+        SmallPrimeFilter filter;
+        try(PrimeSearchEngine.Search search = engine.newSearch(options, token)) {
+            SearchCounters counters = search.counters();
+            counters.converted(conversionTime.toNanos());
+            if(resumed != null)
+                counters.restore(resumed.stats());
+            String outcome = "failed";
             try {
-                BigInteger result = executors.invokeAny(tests.stream().map(i -> (Callable<BigInteger>)
-                        () -> {
-                            if(i.isProbablePrime(1))
-                                return i;
-                            throw new RuntimeException("Not Prime");
-                        }).collect(Collectors.toList()));
-    
-                executors.shutdownNow();
-                
-                System.out.println(formatReport(result, attempts, tested.size(), sophie, startTime));
+                // Until the first tests are timed, sieve to the default bound, or to the one asked for
+                boolean tuneSieve = resumed != null ? resumed.tuneSieve()
+                        : options.sieveBound() == 0 && options.seed() == null;
+                int sieveBound = resumed != null ? resumed.sieveBound()
+                        : options.sieveBound() != 0 ? options.sieveBound() : SieveDepth.DEFAULT_BOUND;
+                filter = SieveDepth.filter(sieveBound);
+                counters.sieveBound(sieveBound);
+                long sieveStart = System.nanoTime();
+                NeighborhoodSieve sieve = newSieve(keyFrame, filter, options, counters);
+                long firstSieveNanos = System.nanoTime() - sieveStart;
+                int firstMutationCount = sieve.mutationCount();
+                int firstSurvivorCount = sieve.survivorCount();
+                while(!search.isDone()) {
+                    List<BigInteger> tests = generateTests(tested, sieve, batchSize, candidateRandom, counters);
+                    for(BigInteger test : tests)
+                        if(!search.submit(test))
+                            break;
+                    
+                    attempts++;
+                    if(tests.isEmpty())
+                        failedViable++;
+                    
+                    // Sieve the current keyframe again if the bound changes, the candidates already tested are skipped
+                    if(tuneSieve && search.testedCount() >= engine.testerCount()) {
+                        tuneSieve = false;
+                        double testNanos = (double) counters.probablePrimeTestNanos() / counters.probablePrimeTests();
+                        int chosen = SieveDepth.choose(keyFrame.length(), testNanos, firstSieveNanos, sieveBound,
+                                firstMutationCount, firstSurvivorCount, rekeyAt);
+                        if(chosen != sieveBound) {
+                            sieveBound = chosen;
+                            filter = SieveDepth.filter(sieveBound);
+                            counters.sieveBound(sieveBound);
+                            sieve = newSieve(keyFrame, filter, options, counters);
+                        }
+                    }
+                    
+                    RekeyChecker.rekeyState state = checker.checkAndUpdateKeyFrame(tested, failedViable, sieve.isExhausted());
+                    switch(state) {
+                        case REKEY -> {
+                            counters.rekeyed();
+                            keyFrame = generateExtraTest(tested, keyFrame, keyFrameRandom, counters);
+                            sieve = newSieve(keyFrame, filter, options, counters);
+                        }
+                        case RESTART -> {
+                            counters.restarted();
+                            keyFrame = generateExtraTest(tested, originalDigits, keyFrameRandom, counters);
+                            sieve = newSieve(keyFrame, filter, options, counters);
+                        }
+                        case DEGENERATE -> {
+                            counters.degenerated();
+                            keyFrame = originalDigits = replaceRandomCharacter(originalDigits, ALL_DIGITS, keyFrameRandom);
+                            sieve = newSieve(keyFrame, filter, options, counters);
+                        }
+                    }
+                    if(state != RekeyChecker.rekeyState.NORMAL)
+                        commitKeyFrame(state, counters.candidatesGenerated(), sieve);
+                    
+                    if(listener != null) {
+                        long now = System.nanoTime();
+                        if(now - nextProgress >= 0) {
+                            nextProgress = now + progressIntervalNanos;
+                            listener.onProgress(new SearchProgress(attempts, tested.size(), search.testedCount(),
+                                    Duration.ofNanos(searchedBefore + now - startTime),
+                                    counters.toStats(searchedBefore + now - startTime)));
+                        }
+                    }
+                    
+                    // The state is copied here, between batches, and written while the search goes on
+                    if(checkpointPath != null) {
+                        long now = System.nanoTime();
+                        if(now - nextCheckpoint >= 0 && (checkpointWriter == null || !checkpointWriter.isAlive())) {
+                            nextCheckpoint = now + checkpointIntervalNanos;
+                            SearchCheckpoint checkpoint = new SearchCheckpoint(SETTINGS_FINGERPRINT, original,
+                                    options.sophie(), options.sophieGermainPair(), options.seed(),
+                                    options.shardIndex(), options.shardCount(), options.sieveBound(), rootSeed,
+                                    keyFrameRandom.draws(), candidateRandom.draws(), originalDigits.toString(),
+                                    keyFrame.toString(), attempts, failedViable, tuneSieve, sieveBound,
+                                    checker.rekeyCheck, checker.restartCheck, checker.degenerateCheck,
+                                    counters.toStats(searchedBefore + now - startTime), tested.copy());
+                            checkpointWriter = Thread.ofVirtual().name("pictoprime-checkpoint")
+                                    .start(() -> writeCheckpoint(checkpoint, checkpointPath));
+                        }
+                    }
+                }
                 
-                return result.toString();
-            } catch(Exception ignored) {}
-            
-            attempts++;
-            if(tests.isEmpty())
-                failedViable++;
-            
-            switch(checker.checkAndUpdateKeyFrame(tested, failedViable)) {
-                case REKEY -> keyFrame = generateExtraTest(tested, keyFrame);
-                case RESTART -> keyFrame = generateExtraTest(tested, original);
-                case DEGENERATE -> keyFrame = original =
-                        replaceRandomCharacter(original,
-                                new char[]{'0', '1', '2', '3', '4', '5', '6', '7', '8', '9'});
+                prime = search.result();
+                outcome = "found";
+            } catch(TimeoutException exception) {
+                outcome = "timeout";
+                throw exception;
+            } catch(CancellationException exception) {
+                outcome = "cancelled";
+                throw exception;
+            } finally {
+                counters.searched(System.nanoTime() - startTime);
+                stats = counters.toStats();
+                commit(event, original.bitLength(), outcome, stats);
+                awaitCheckpoint(checkpointWriter);
             }
         }
+        BigInteger sophieGermain = null;
+        if(options.sophieGermainPair())
+            sophieGermain = prime.shiftLeft(1).add(BigInteger.ONE);
+        else if(options.sophie())
+            sophieGermain = findCompanion(engine, prime, filter, options, token);
+        if(cache != null)
+            cache.put(cacheKey, new PrimeCache.Entry(prime, sophieGermain));
+        if(checkpointPath != null)
+            deleteCheckpoint(checkpointPath);
+        return new PrimeResult(prime, sophieGermain, attempts, tested.size(), engine.testerCount(), stats.searchTime(),
+                stats);
+    }
+    
+    private static void commit(SearchEvents.Search event, int bits, String outcome, PrimeSearchStats stats) {
+        if(!event.shouldCommit())
+            return;
+        event.bits = bits;
+        event.outcome = outcome;
+        event.set(stats);
+        event.commit();
+    }
+    
+    private static void writeCheckpoint(SearchCheckpoint checkpoint, Path path) {
+        try {
+            checkpoint.write(path);
+        } catch(IOException exception) {
+            // The search goes on, and the previous checkpoint is still there
+            exception.printStackTrace();
+        }
+    }
+    
+    private static void awaitCheckpoint(Thread checkpointWriter) {
+        if(checkpointWriter == null)
+            return;
+        try {
+            checkpointWriter.join();
+        } catch(InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private static void deleteCheckpoint(Path checkpoint) {
+        try {
+            Files.deleteIfExists(checkpoint);
+        } catch(IOException exception) {
+            exception.printStackTrace();
+        }
+    }
+    
+    private static void commitKeyFrame(RekeyChecker.rekeyState state, long generated, NeighborhoodSieve sieve) {
+        SearchEvents.KeyFrame event = new SearchEvents.KeyFrame();
+        if(!event.shouldCommit())
+            return;
+        event.kind = state.name();
+        event.candidatesGenerated = generated;
+        event.survivors = sieve.survivorCount();
+        event.commit();
     }
     
     public static String findPrime(BigInteger original) {
         return findPrime(original, false);
     }
     
-    private static BigInteger swapLastDigit(BigInteger original) {
-        String strOriginal = original.toString();
-        char lastDigit = strOriginal.charAt(strOriginal.length() - 1);
-        if(LAST_DIGIT_SUBSTITUTION.containsKey(lastDigit)) {
-            strOriginal = strOriginal.substring(0, strOriginal.length() - 1)
-                    + LAST_DIGIT_SUBSTITUTION.get(lastDigit);
-            return new BigInteger(strOriginal);
-        }
-        return original;
+    /**
+     * The digits of the original number with the last digit substituted, which is where every search starts.
+     */
+    static DigitBuffer toKeyFrame(BigInteger original) {
+        return swapLastDigit(new DigitBuffer(original.toString(), MODIFIABLE_DIGITS));
     }
     
-    private static String formatReport(BigInteger result, int attempts, int numTested, boolean sophie, long startTime) {
-        long timeTakenMilli = TimeUnit.MILLISECONDS.convert(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
-        String report = String.format("""
-                        {
-                            prime: %s,
-                            attempts: %d,
-                            simultaneous: %d,
-                            distinctTested: %d,
-                            Time: %d ms
-                        }
-                        """, result, attempts, CORE_COUNT, numTested, timeTakenMilli);
+    /**
+     * @param sophieGermainPair Whether the search is for a Sophie Germain pair, which no prime ending in 7 belongs to
+     */
+    static DigitBuffer toKeyFrame(BigInteger original, boolean sophieGermainPair) {
+        DigitBuffer keyFrame = toKeyFrame(original);
+        int last = keyFrame.length() - 1;
+        // 2p + 1 would end in 5, and 1 is the digit 7 may be replaced with
+        if(sophieGermainPair && keyFrame.digitAt(last) == 7)
+            keyFrame.setDigit(last, 1);
+        return keyFrame;
+    }
+    
+    /**
+     * Whether the shard has a position the search may change, without which every keyframe change is a no-op and
+     * no candidate is ever drawn.
+     */
+    private static boolean hasModifiablePosition(DigitBuffer keyFrame, int shardIndex, int shardCount) {
+        for(int i = shardIndex; i < keyFrame.length(); i += shardCount)
+            if(keyFrame.isModifiable(i))
+                return true;
+        return false;
+    }
     
-        if(sophie) {
-            BigInteger sophieGermain = findAlmostSophieGermain(result);
-            if(sophieGermain != null)
-                return String.format("""
+    private static DigitBuffer swapLastDigit(DigitBuffer original) {
+        int last = original.length() - 1;
+        String substitution = LAST_DIGIT_SUBSTITUTION.get((char) ('0' + original.digitAt(last)));
+        if(substitution == null)
+            return original;
+        if(substitution.length() == 1) {
+            original.setDigit(last, substitution.charAt(0) - '0');
+            return original;
+        }
+        return new DigitBuffer(original.toString().substring(0, last) + substitution, MODIFIABLE_DIGITS);
+    }
+    
+    private static String formatReport(PrimeResult result) {
+        long timeTakenMilli = result.elapsed().toMillis();
+        if(result.sophieGermain() != null)
+            return String.format("""
                             {
                                 prime: %s,
                                 attempts: %d,
@@ -112,114 +419,166 @@ public class PrimeSearch {
                                 sophieGermain: %s,
                                 Time: %d ms
                             }
-                        """, result, attempts, CORE_COUNT, numTested, sophieGermain, timeTakenMilli);
-        }
+                        """, result.prime(), result.attempts(), result.simultaneous(), result.distinctTested(),
+                    result.sophieGermain(), timeTakenMilli);
         
-        return report;
+        return String.format("""
+                        {
+                            prime: %s,
+                            attempts: %d,
+                            simultaneous: %d,
+                            distinctTested: %d,
+                            Time: %d ms
+                        }
+                        """, result.prime(), result.attempts(), result.simultaneous(), result.distinctTested(),
+                timeTakenMilli);
     }
     
     /**
      * Generates a collection of tests that are not in the tested set.
      * This is used so we may execute the tests in parallel.
+     * The tests are drawn from the keyframe's sieve, so none of them are divisible by a small prime.
      */
-    private static List<BigInteger> generateTests(Set<BigInteger> tested, BigInteger keyFrame) {
+    static List<BigInteger> generateTests(TestedCandidates tested, NeighborhoodSieve sieve, int count,
+                                          RandomGenerator random, SearchCounters counters) {
         List<BigInteger> arr = new ArrayList<>();
         
-        for(int i = 0, c = 0; i < CORE_COUNT && c <= 256; i++, c++) {
-            arr.add(i, null);
-            do {
-                arr.set(i, generateExtraTest(tested, keyFrame));
-                tested.add(arr.get(i));
-                c++;
-            } while(!isNotDivisibleBySmallPrimes(arr.get(i)) && c <= 256 && tested.size() <= keyFrame.toString().length());
+        while(arr.size() < count) {
+            int mutation = sieve.next(random);
+            if(mutation < 0)
+                break;
+            if(tested.add(sieve.fingerprint(mutation)))
+                arr.add(sieve.toBigInteger(mutation));
+            else
+                counters.duplicateRejected();
         }
         
-        
-        if(arr.size() == 1)
-            return arr.stream().filter(PrimeSearch::isNotDivisibleBySmallPrimes).collect(Collectors.toList());
+        counters.candidatesGenerated(arr.size());
         return arr;
     }
+        
+    static NeighborhoodSieve newSieve(DigitBuffer keyFrame, SearchCounters counters) {
+        return newSieve(keyFrame, SMALL_PRIMES, SearchOptions.defaults(), counters);
+    }
+    
+    /**
+     * @param options Whether the companion 2n + 1 of a mutation n must also survive the sieve, and which positions
+     *                may be mutated
+     */
+    static NeighborhoodSieve newSieve(DigitBuffer keyFrame, SmallPrimeFilter filter, SearchOptions options,
+                                      SearchCounters counters) {
+        NeighborhoodSieve sieve = new NeighborhoodSieve(keyFrame, filter, REPLACEMENTS, options.sophieGermainPair(),
+                options.shardIndex(), options.shardCount());
+        counters.sieved(sieve);
+        return sieve;
+    }
     
     /**
      * Tries to generate a test that is not in the tested set.
      * The algorithm is written rather naively, but this is fine (although inefficient) because
      * it takes up very little of the CPU time. The real crunch comes from the prime checking :)
      */
-    private static BigInteger generateExtraTest(Set<BigInteger> tested, BigInteger keyFrame) {
-        BigInteger val;
+    static DigitBuffer generateExtraTest(TestedCandidates tested, DigitBuffer keyFrame, RandomGenerator random,
+                                         SearchCounters counters) {
+        DigitBuffer val;
         int c = 0;
-        do {
-            val = replaceRandomCharacter(keyFrame);
-        } while(tested.contains(val) && c++ <= 256);
-        return val;
+        while(true) {
+            val = replaceRandomCharacter(keyFrame, random);
+            if(!tested.contains(val.fingerprint()) || c++ > 256)
+                return val;
+            counters.duplicateRejected();
+        }
     }
     
     /**
      * Replaces one of the characters in the keyframe with a random character.
      */
-    private static BigInteger replaceRandomCharacter(BigInteger keyFrame) {
-        return replaceRandomCharacter(keyFrame, null);
+    private static DigitBuffer replaceRandomCharacter(DigitBuffer keyFrame, RandomGenerator random) {
+        return replaceRandomCharacter(keyFrame, null, random);
     }
     
-    private static BigInteger replaceRandomCharacter(BigInteger keyFrame, char[] specified) {
-        int index = findModifiableCharIndex(keyFrame);
-        
-        // replace that position in the string
-        String keyFrameString = keyFrame.toString();
-        char[] replacements = specified != null ?
-                specified :
-                toPrimitive(ALLOWED_MODIFICATIONS.get(keyFrameString.charAt(index)));
-        char replaceWith = replacements[RANDOM.nextInt(replacements.length)];
-        
-        keyFrameString = keyFrameString.substring(0, index) + replaceWith + keyFrameString.substring(index + 1);
-        return new BigInteger(keyFrameString);
+    private static DigitBuffer replaceRandomCharacter(DigitBuffer keyFrame, int[] specified, RandomGenerator random) {
+        DigitBuffer result = keyFrame.copy();
+        int index = findModifiableCharIndex(keyFrame, random);
+        int[] replacements = specified != null ? specified : REPLACEMENTS[keyFrame.digitAt(index)];
+        result.setDigit(index, replacements[random.nextInt(replacements.length)]);
+        // Replacing the last modifiable digit with one that is not would leave the search nothing to change
+        return result.modifiableCount() > 0 ? result : keyFrame.copy();
     }
     
     /**
      * Finds a character in the provided keyframe that the algorithm is allowed to modify.
+     * The last character is never modifiable. Returns -1 if there is no such character.
      */
-    private static int findModifiableCharIndex(BigInteger keyFrame) {
-        String strKeyFrame = keyFrame.toString();
-        int index;
-        do { // do not replace the last character; nextInt() is exclusive at the upper bound
-            index = RANDOM.nextInt(strKeyFrame.length() - 1);
-        } while(!ALLOWED_MODIFICATIONS.containsKey(strKeyFrame.charAt(index)));
-        return index;
-    }
-    
-    private static char[] toPrimitive(Character[] arr) {
-        final char[] result = new char[arr.length];
-        for(int i = 0; i < arr.length; i++)
-            result[i] = arr[i];
-        return result;
+    private static int findModifiableCharIndex(DigitBuffer keyFrame, RandomGenerator random) {
+        return keyFrame.randomModifiablePosition(random);
     }
     
-    private static BigInteger findAlmostSophieGermain(BigInteger val) {
-        AlmostSophieGermainMultipliersPseudoGenerator gen = new AlmostSophieGermainMultipliersPseudoGenerator();
-        boolean done = false;
-        while(!done) {
-            List<BigInteger> tests = new ArrayList<>();
-            for(int i = 0; i < CORE_COUNT; i++) {
-                BigInteger next = gen.next();
-                if(next.equals(BigInteger.valueOf(-1)))
-                    done = true;
-                else
-                    tests.add(next);
+    /**
+     * The key depends on the options that change the prime found: the companion asked for, the shard, a fixed sieve
+     * bound, which decides the candidates drawn, and the seed and sieve bound of a seeded search, whose prime may
+     * differ from the one an unseeded search found.
+     */
+    private static String cacheKey(BigInteger original, SearchOptions options) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(SETTINGS_FINGERPRINT.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) (options.sophieGermainPair() ? 2 : options.sophie() ? 1 : 0));
+            if(options.shardCount() > 1)
+                digest.update((options.shardIndex() + "/" + options.shardCount()).getBytes(StandardCharsets.ISO_8859_1));
+            if(options.seed() != null)
+                digest.update(Long.toString(options.seed()).getBytes(StandardCharsets.ISO_8859_1));
+            if(options.sieveBound() != 0 || options.seed() != null) {
+                // A seeded search that does not fix its bound sieves to the default one
+                int sieveBound = options.sieveBound() != 0 ? options.sieveBound() : SieveDepth.DEFAULT_BOUND;
+                digest.update(("b" + sieveBound).getBytes(StandardCharsets.ISO_8859_1));
             }
-            Optional<BigInteger> possiblePrime = tests.stream().map(i -> i.multiply(val.add(BigInteger.ONE)))
-                    .filter(PrimeSearch::isNotDivisibleBySmallPrimes).findAny();
-            if(possiblePrime.isPresent())
-                return possiblePrime.get();
+            digest.update(original.toString().getBytes(StandardCharsets.ISO_8859_1));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch(NoSuchAlgorithmException exception) {
+            // Every Java platform has SHA-256
+            throw new IllegalStateException(exception);
         }
-        
-        return null;
     }
     
-    private static boolean isNotDivisibleBySmallPrimes(BigInteger value) {
-        for(BigInteger v : SMALL_PRIMES)
-            if(value.remainder(v).equals(BigInteger.ZERO))
-                return false;
-        return true;
+    private static String toFingerprint(Map<Character, Character[]> allowedModifications, Map<Character, String> lastDigitSubstitution) {
+        StringBuilder fingerprint = new StringBuilder();
+        new TreeMap<>(allowedModifications).forEach((digit, replacements) ->
+                fingerprint.append(digit).append(Arrays.toString(replacements)));
+        fingerprint.append('|');
+        new TreeMap<>(lastDigitSubstitution).forEach((digit, substitution) ->
+                fingerprint.append(digit).append('=').append(substitution).append(','));
+        return fingerprint.toString();
+    }
+    
+    private static int[][] toReplacementTable(Map<Character, Character[]> allowedModifications) {
+        final int[][] result = new int[10][];
+        allowedModifications.forEach((digit, replacements) ->
+                result[digit - '0'] = Arrays.stream(replacements).mapToInt(c -> c - '0').toArray());
+        return result;
+    }
+    
+    private static boolean[] toModifiableDigits(int[][] replacements) {
+        final boolean[] result = new boolean[replacements.length];
+        for(int i = 0; i < replacements.length; i++)
+            result[i] = replacements[i] != null && replacements[i].length != 0;
+        return result;
+    }
+    
+    /**
+     * Tests the companion candidates of the prime on the engine's testers, see {@link CompanionSieve}.
+     * Returns the one with the smallest multiplier that is prime, or null if there is none or the deadline passed.
+     */
+    private static BigInteger findCompanion(PrimeSearchEngine engine, BigInteger prime, SmallPrimeFilter filter,
+                                            SearchOptions options, CancellationToken token) {
+        try(PrimeSearchEngine.Search search = engine.newSearch(options, token)) {
+            for(BigInteger candidate : CompanionSieve.candidates(prime, filter))
+                if(!search.submit(candidate))
+                    break;
+            return search.awaitResult();
+        } catch(TimeoutException exception) {
+            return null;
+        }
     }
     
     /**
@@ -228,34 +587,19 @@ public class PrimeSearch {
      * @return A list of primes smaller than n
      */
     public static List<Integer> generatePrimes(int n) {
-        int sqrtN = (int) Math.sqrt(n);
-        boolean[] nums = new boolean[n + 1];
-        Arrays.fill(nums, true);
-        
-        for(int i = 2; i <= sqrtN; i++)
-            if(nums[i])
-                for(int j = 2*i; j <= n; j += i)
-                    nums[j] = false;
-        
-        List<Integer> primes = new LinkedList<>();
-        for(int i = 2; i < nums.length; i++)
-            if(nums[i])
-                primes.add(i);
-        
-        return primes;
+        return Arrays.stream(PrimeTable.primesUpTo(n)).boxed().collect(Collectors.toCollection(ArrayList::new));
     }
     
     private static Settings loadSettings(String settingsPath) {
-        try {
-            URL settingsURL = PrimeSearch.class.getClassLoader().getResource(settingsPath);
-
-            if(settingsURL == null)
+        // Read through a stream rather than a Path so that the settings can also be loaded from inside a jar
+        try(InputStream settingsStream = PrimeSearch.class.getClassLoader().getResourceAsStream(settingsPath)) {
+            if(settingsStream == null)
                 return new Settings();
 
-            String settingsJson =  new String(Files.readAllBytes(Paths.get(settingsURL.toURI())));
+            String settingsJson = new String(settingsStream.readAllBytes(), StandardCharsets.UTF_8);
             Gson gson = new Gson();
             return gson.fromJson(settingsJson, Settings.class);
-        } catch(IOException | URISyntaxException exception) {
+        } catch(IOException exception) {
             exception.printStackTrace();
         }
         return new Settings();
@@ -291,6 +635,13 @@ public class PrimeSearch {
         }
     }
     
+    /**
+     * The engine behind the static findPrime methods, only started once one of them is called.
+     */
+    private static class DefaultEngine {
+        private static final PrimeSearchEngine INSTANCE = new PrimeSearchEngine(CORE_COUNT);
+    }
+    
     private static class RekeyChecker {
         boolean shouldRekey;
         int rekeyCheck;
@@ -318,7 +669,13 @@ public class PrimeSearch {
             this.degenerateCheckNum = degenerateCheck;
         }
         
-        private rekeyState checkAndUpdateKeyFrame(Set<BigInteger> tested, int failedViable) {
+        private void restore(int rekeyCheck, int restartCheck, int degenerateCheck) {
+            this.rekeyCheck = rekeyCheck;
+            this.restartCheck = restartCheck;
+            this.degenerateCheck = degenerateCheck;
+        }
+        
+        private rekeyState checkAndUpdateKeyFrame(TestedCandidates tested, int failedViable, boolean neighborhoodExhausted) {
             shouldRekey = tested.size() > rekeyCheck;
             if(shouldRekey)
                 rekeyCheck = rekeyCheckNum + (int) Math.floor(tested.size()/rekeyCheckNum)*rekeyCheckNum;
@@ -333,7 +690,8 @@ public class PrimeSearch {
     
             // If we reach the rekey point (every "rekeyAt" attempts), we adjust a single digit in the keyframe, and use that as the new keyframe.
             // This is used to try to prevent degradation of quality of the visual.
-            if(tested.size() == 0 || shouldRekey)
+            // Once every mutation of the keyframe that survived the sieve has been tried, there is nothing left to test.
+            if(tested.size() == 0 || shouldRekey || neighborhoodExhausted)
                 return rekeyState.REKEY;
             if(shouldRestart)
                 return rekeyState.RESTART;
@@ -342,32 +700,4 @@ public class PrimeSearch {
             return rekeyState.NORMAL;
         }
     }
-    
-    /**
-     * This generates a series of multipliers that are multiplied to the original prime to try to find a new prime.
-     */
-    private static class AlmostSophieGermainMultipliersPseudoGenerator {
-        private int index = -1;
-        public BigInteger next() {
-            index++;
-            
-            // 2, 4, 6, 8, 10, 20, 30, 40, 50, 60, 70, 80, 90, 100, 200, 300, 400, 500, 600, 700, 800, 900
-            return switch(index) {
-                case 0:
-                    yield BigInteger.TWO;
-                case 1:
-                    yield BigInteger.valueOf(4);
-                case 2:
-                    yield BigInteger.valueOf(6);
-                case 3:
-                    yield BigInteger.valueOf(8);
-                default:
-                    int j = ((index - 4) % 9) + 1;
-                    int i = ((index - 4) / 9) + 1;
-                    if(i > 32)  // Size Limit
-                        yield BigInteger.valueOf(-1);
-                    yield BigInteger.TEN.pow(i).multiply(BigInteger.valueOf(j));
-            };
-        }
-    }
 }
@@ -0,0 +1,416 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs prime searches on a fixed set of tester threads.
+ * The thread running a search generates candidates into a bounded queue while the testers take from it,
+ * so the testers never wait on each other between batches. A search ends with the first of its candidates, in the
+ * order they were submitted, that turns out to be prime: once a prime is found, the candidates submitted before it
+ * are still tested, which only means waiting for those being tested already, while the ones after it are dropped.
+ * That way the prime does not depend on which tester happened to finish first.
+ * Searches running at the same time share the testers fairly: each search has a queue of its own, and the testers
+ * take candidates from the queues in proportion to the searches' priorities, see {@link SearchOptions#withPriority(int)}.
+ * Every candidate is screened with a cheap primality test, and only a candidate that passes the screen goes through
+ * the thorough confirmation test. A search for a Sophie Germain pair puts the companion 2n + 1 of a candidate n
+ * through the same tests.
+ * An engine can run any number of searches, one after another or at the same time, until it is closed.
+ */
+public class PrimeSearchEngine implements AutoCloseable {
+    private static final AtomicInteger ENGINE_COUNT = new AtomicInteger();
+    
+    private final int testerCount;
+    private final PrimalityTester screen;
+    private final PrimalityTester confirmation;
+    private final FairScheduler<Candidate> scheduler;
+    private final ExecutorService testers;
+    // Runs the candidate generation of asynchronous searches
+    private final ExecutorService searchers;
+    // Computes the original numbers of asynchronous searches, which mostly means waiting on image I/O
+    private final ExecutorService preparers;
+    private final SearchCounters totals = new SearchCounters(null);
+    private volatile boolean closed;
+    
+    public PrimeSearchEngine() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Screens candidates with a strong probable prime test to base 2 and confirms them with Baillie-PSW.
+     * @param testerCount The number of threads testing candidates for primality
+     */
+    public PrimeSearchEngine(int testerCount) {
+        this(testerCount, PrimalityTester.strongBaseTwo(), PrimalityTester.bailliePSW(0));
+    }
+    
+    /**
+     * @param testerCount The number of threads testing candidates for primality
+     * @param screen The test every candidate goes through
+     * @param confirmation The test a candidate that passed the screen must also pass to be reported as prime
+     */
+    public PrimeSearchEngine(int testerCount, PrimalityTester screen, PrimalityTester confirmation) {
+        if(testerCount < 1)
+            throw new IllegalArgumentException("testerCount must be positive: " + testerCount);
+        
+        this.testerCount = testerCount;
+        this.screen = Objects.requireNonNull(screen);
+        this.confirmation = Objects.requireNonNull(confirmation);
+        this.scheduler = new FairScheduler<>(2*testerCount);
+        
+        final int engineId = ENGINE_COUNT.incrementAndGet();
+        this.testers = Executors.newFixedThreadPool(testerCount, daemonThreads("pictoprime-" + engineId + "-tester-"));
+        this.searchers = Executors.newCachedThreadPool(daemonThreads("pictoprime-" + engineId + "-search-"));
+        this.preparers = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("pictoprime-" + engineId + "-prepare-", 1).factory());
+        for(int i = 0; i < testerCount; i++)
+            testers.execute(this::test);
+    }
+    
+    private static ThreadFactory daemonThreads(String namePrefix) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+    /**
+     * Searches for a prime number by adjusting the original number.
+     */
+    public String findPrime(BigInteger original, boolean sophie) {
+        return PrimeSearch.findPrime(this, original, Duration.ZERO, sophie);
+    }
+    
+    public String findPrime(BigInteger original) {
+        return findPrime(original, false);
+    }
+    
+    /**
+     * Searches for a prime number by adjusting the original number, without blocking the calling thread.
+     * The future fails with a {@link TimeoutException} if the deadline passes, and with a
+     * {@link CancellationException} if the cancellation token is cancelled. Cancelling the future also stops the search.
+     */
+    public CompletableFuture<PrimeResult> findPrimeAsync(BigInteger original, SearchOptions options) {
+        Objects.requireNonNull(original);
+        return findPrimeAsync(() -> original, options);
+    }
+    
+    /**
+     * Like {@link #findPrimeAsync(BigInteger, SearchOptions)}, but first computes the original number on a virtual thread.
+     */
+    CompletableFuture<PrimeResult> findPrimeAsync(Callable<BigInteger> original, SearchOptions options) {
+        if(closed)
+            throw new IllegalStateException("The engine is closed");
+        
+        final CancellationToken token = new CancellationToken();
+        final CancellationToken callerToken = options.cancellationToken();
+        final CompletableFuture<PrimeResult> future = new CompletableFuture<>();
+        future.whenComplete((result, exception) -> {
+            if(future.isCancelled())
+                token.cancel();
+        });
+        
+        preparers.execute(() -> {
+            try {
+                long conversionStart = System.nanoTime();
+                BigInteger value = original.call();
+                Duration conversionTime = Duration.ofNanos(System.nanoTime() - conversionStart);
+                searchers.execute(() -> {
+                    try {
+                        if(token.isCancelled() || callerToken != null && callerToken.isCancelled())
+                            throw new CancellationException("The search was cancelled");
+                        future.complete(PrimeSearch.search(this, value, conversionTime, options, token));
+                    } catch(Throwable throwable) {
+                        future.completeExceptionally(throwable);
+                    }
+                });
+            } catch(Throwable throwable) {
+                future.completeExceptionally(throwable);
+            }
+        });
+        return future;
+    }
+    
+    public int testerCount() {
+        return testerCount;
+    }
+    
+    /**
+     * The counters of every search this engine ran so far, summed. Searches still running are included with the
+     * work they did up to now, so polling this gives live metrics of the engine.
+     */
+    public PrimeSearchStats stats() {
+        return totals.toStats();
+    }
+    
+    /**
+     * @param token An extra token that also cancels the search, on top of the one in the options, or null
+     */
+    Search newSearch(SearchOptions options, CancellationToken token) {
+        if(closed)
+            throw new IllegalStateException("The engine is closed");
+        return new Search(options, token);
+    }
+    
+    private void test() {
+        try {
+            while(!closed) {
+                Candidate candidate = scheduler.take();
+                Search search = candidate.search();
+                if(search.skips(candidate)) {
+                    search.tested(candidate);
+                    continue;
+                }
+                
+                SearchEvents.PrimalityTest event = new SearchEvents.PrimalityTest();
+                event.begin();
+                try {
+                    BigInteger value = candidate.value();
+                    BigInteger companion = search.sophieGermainPair ? value.shiftLeft(1).add(BigInteger.ONE) : null;
+                    BooleanSupplier skipped = () -> search.skips(candidate);
+                    long start = System.nanoTime();
+                    boolean prime = screen.isProbablePrime(value, skipped)
+                            && (companion == null || screen.isProbablePrime(companion, skipped))
+                            && !skipped.getAsBoolean() && confirmation.isProbablePrime(value, skipped)
+                            && (companion == null || confirmation.isProbablePrime(companion, skipped));
+                    search.counters.probablePrimeTested(System.nanoTime() - start);
+                    if(event.shouldCommit()) {
+                        event.bits = value.bitLength();
+                        event.probablePrime = prime;
+                        event.commit();
+                    }
+                    if(prime)
+                        search.found(candidate);
+                } catch(CancellationException ignored) {
+                    // The search ended, or found a prime before this candidate, while the candidate was being tested
+                } catch(RuntimeException exception) {
+                    search.fail(exception);
+                } catch(Throwable throwable) {
+                    // An error such as a StackOverflowError only fails this search, and the tester goes on with the
+                    // next candidate instead of leaving the engine one tester short for good
+                    search.fail(new IllegalStateException("Testing a candidate failed", throwable));
+                } finally {
+                    search.tested(candidate);
+                }
+            }
+        } catch(InterruptedException ignored) {
+            // The engine is closing
+        }
+    }
+    
+    /**
+     * Stops the testers. Searches still running fail with an {@link IllegalStateException}.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        testers.shutdownNow();
+        searchers.shutdownNow();
+        preparers.shutdownNow();
+    }
+    
+    /**
+     * @param sequence The position of the candidate among those its search submitted
+     */
+    private record Candidate(Search search, long sequence, BigInteger value) {}
+    
+    /**
+     * The state shared between the thread generating the candidates of one search and the testers.
+     * Closing the search drops its candidates that are still queued.
+     */
+    class Search implements AutoCloseable {
+        private final FairScheduler<Candidate>.Lane lane;
+        // The earliest candidate found prime so far
+        private final AtomicReference<Candidate> found = new AtomicReference<>();
+        // The sequence numbers of the candidates submitted but not tested yet
+        private final ConcurrentSkipListSet<Long> untested = new ConcurrentSkipListSet<>();
+        private final AtomicReference<BigInteger> result = new AtomicReference<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private volatile RuntimeException failure;
+        private final SearchCounters counters = new SearchCounters(totals);
+        private final CancellationToken token;
+        private final CancellationToken callerToken;
+        private final boolean sophieGermainPair;
+        private final boolean hasDeadline;
+        private final long deadlineNanos;
+        // Only used by the thread generating the candidates
+        private long nextSequence;
+        
+        private Search(SearchOptions options, CancellationToken token) {
+            this.lane = scheduler.newLane(options.priority());
+            this.token = token;
+            this.callerToken = options.cancellationToken();
+            this.sophieGermainPair = options.sophieGermainPair();
+            this.hasDeadline = options.deadline() != null;
+            this.deadlineNanos = hasDeadline ? System.nanoTime() + nanosUntil(options.deadline()) : 0;
+        }
+        
+        private static long nanosUntil(Instant deadline) {
+            try {
+                return Math.max(0, Duration.between(Instant.now(), deadline).toNanos());
+            } catch(ArithmeticException exception) {
+                // Too far away to count in nanoseconds
+                return Long.MAX_VALUE / 2;
+            }
+        }
+        
+        /**
+         * Queues a candidate for testing, waiting for room in the queue if necessary.
+         * Returns false without queueing if the search is already done.
+         */
+        boolean submit(BigInteger value) {
+            Candidate candidate = new Candidate(this, nextSequence++, value);
+            untested.add(candidate.sequence());
+            try {
+                while(!isDone())
+                    if(lane.offer(candidate, 10, TimeUnit.MILLISECONDS))
+                        return true;
+            } catch(InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                fail(new IllegalStateException("Interrupted while searching", exception));
+            }
+            untested.remove(candidate.sequence());
+            return false;
+        }
+        
+        /**
+         * Whether the search needs no more candidates, because it found a prime or was stopped.
+         */
+        boolean isDone() {
+            return found.get() != null || isStopped();
+        }
+        
+        private boolean isStopped() {
+            return result.get() != null || failure != null || closed || isCancelled() || isTimedOut();
+        }
+        
+        /**
+         * Whether testing the candidate is no longer worth it.
+         */
+        private boolean skips(Candidate candidate) {
+            Candidate prime = found.get();
+            return prime != null && candidate.sequence() > prime.sequence() || isStopped();
+        }
+        
+        private boolean isCancelled() {
+            return token != null && token.isCancelled() || callerToken != null && callerToken.isCancelled();
+        }
+        
+        private boolean isTimedOut() {
+            return hasDeadline && System.nanoTime() - deadlineNanos >= 0;
+        }
+        
+        /**
+         * The number of candidates the testers have finished testing.
+         */
+        long testedCount() {
+            return counters.probablePrimeTests();
+        }
+        
+        /**
+         * The counters of this search, which also add up in the engine's totals.
+         */
+        SearchCounters counters() {
+            return counters;
+        }
+        
+        /**
+         * Returns the prime found, or throws if the search ended without one.
+         * Once a prime is found, waits for the candidates submitted before it to be tested.
+         */
+        BigInteger result() throws TimeoutException {
+            try {
+                while(found.get() != null && !isStopped())
+                    completed.await(10, TimeUnit.MILLISECONDS);
+            } catch(InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                fail(new IllegalStateException("Interrupted while searching", exception));
+            }
+            
+            BigInteger prime = result.get();
+            if(prime != null)
+                return prime;
+            if(failure != null)
+                throw failure;
+            if(closed)
+                throw new IllegalStateException("The engine was closed during the search");
+            if(isCancelled())
+                throw new CancellationException("The search was cancelled");
+            if(isTimedOut())
+                throw new TimeoutException("The search passed its deadline");
+            throw new IllegalStateException("The search is still running");
+        }
+        
+        /**
+         * Once every candidate is submitted, waits until one of them is found prime or all of them are tested.
+         * Returns the earliest prime, or null if none of them is prime.
+         */
+        BigInteger awaitResult() throws TimeoutException {
+            try {
+                while((found.get() != null || !untested.isEmpty()) && !isStopped())
+                    completed.await(10, TimeUnit.MILLISECONDS);
+            } catch(InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                fail(new IllegalStateException("Interrupted while searching", exception));
+            }
+            
+            if(result.get() == null && found.get() == null && untested.isEmpty())
+                return null;
+            return result();
+        }
+        
+        private void found(Candidate candidate) {
+            Candidate previous = found.get();
+            while((previous == null || candidate.sequence() < previous.sequence())
+                    && !found.compareAndSet(previous, candidate))
+                previous = found.get();
+            completeIfSettled();
+        }
+        
+        private void tested(Candidate candidate) {
+            untested.remove(candidate.sequence());
+            completeIfSettled();
+        }
+        
+        /**
+         * Completes the search once no candidate before the earliest prime found is left to test.
+         */
+        private void completeIfSettled() {
+            Candidate prime = found.get();
+            if(prime == null || untested.lower(prime.sequence()) != null)
+                return;
+            if(result.compareAndSet(null, prime.value())) {
+                lane.close();
+                completed.countDown();
+            }
+        }
+        
+        private void fail(RuntimeException exception) {
+            if(failure == null)
+                failure = exception;
+            lane.close();
+        }
+        
+        @Override
+        public void close() {
+            lane.close();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.time.Duration;
+
+/**
+ * Counters describing where a search spent its work, see {@link PrimeResult#stats()}.
+ * The same counters summed over every search an engine ran are available from {@link PrimeSearchEngine#stats()}.
+ * @param candidatesGenerated The number of distinct candidates handed to the testers
+ * @param duplicatesRejected The number of candidates or keyframes dropped because they had been generated before
+ * @param mutationsSieved The number of single-digit mutations of keyframes checked against the small primes
+ * @param mutationsRejected The number of those mutations that a small prime divides
+ * @param sieveBound The bound of the small primes the search settled on, see {@link SearchOptions#withSieveBound(int)}
+ * @param probablePrimeTests The number of candidates that went through a primality test
+ * @param probablePrimeTestTime The time the testers spent in primality tests, summed over all testers
+ * @param rekeys The number of times the keyframe was replaced by a mutation of itself
+ * @param restarts The number of times the keyframe was replaced by a mutation of the original
+ * @param degenerations The number of times a digit of the original itself was replaced
+ * @param conversionTime The time it took to convert the image to a number, zero if the search started from a number
+ * @param searchTime The time from the start of the search until the prime was found
+ */
+public record PrimeSearchStats(long candidatesGenerated, long duplicatesRejected, long mutationsSieved,
+                               long mutationsRejected, int sieveBound, long probablePrimeTests,
+                               Duration probablePrimeTestTime, long rekeys, long restarts, long degenerations,
+                               Duration conversionTime, Duration searchTime) {
+    /**
+     * The fraction of the mutations sieved that a small prime divides, 0 if none were sieved.
+     */
+    public double sieveRejectionRate() {
+        return mutationsSieved == 0 ? 0 : (double) mutationsRejected / mutationsSieved;
+    }
+}
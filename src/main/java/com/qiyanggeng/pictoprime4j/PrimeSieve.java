@@ -0,0 +1,80 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.util.Arrays;
+
+/**
+ * A segmented sieve of Eratosthenes over the odd numbers only, one bit per number.
+ * Segments are small enough to stay in the L1/L2 cache while every base prime crosses them off, so sieving to
+ * millions takes milliseconds and a few kilobytes besides the result.
+ */
+final class PrimeSieve {
+    // Odd numbers per segment, a multiple of 64
+    private static final int SEGMENT_BITS = 1 << 18;
+    
+    private PrimeSieve() {}
+    
+    /**
+     * Returns the primes from 2 to at most n, in increasing order.
+     */
+    static int[] primesUpTo(int n) {
+        if(n < 2)
+            return new int[0];
+        
+        final int[] basePrimes = smallOddPrimes((int) Math.sqrt(n));
+        final long[] segment = new long[SEGMENT_BITS / 64];
+        final int[] result = new int[estimateCount(n)];
+        result[0] = 2;
+        int count = 1;
+        
+        // Bit i of the segment starting at low stands for low + 2i
+        for(long low = 3; low <= n; low += 2L * SEGMENT_BITS) {
+            final long high = Math.min(n, low + 2L * SEGMENT_BITS - 2);
+            final int bits = (int) ((high - low) / 2 + 1);
+            Arrays.fill(segment, 0);
+            
+            for(int p : basePrimes) {
+                long square = (long) p * p;
+                if(square > high)
+                    break;
+                long first = Math.max(square, (low + p - 1) / p * p);
+                if((first & 1) == 0)
+                    first += p;
+                for(long i = (first - low) / 2; i < bits; i += p)
+                    segment[(int) (i >>> 6)] |= 1L << i;
+            }
+            
+            for(int word = 0; word * 64 < bits; word++) {
+                long primes = ~segment[word];
+                if(word * 64 + 64 > bits)
+                    primes &= (1L << (bits - word * 64)) - 1;
+                while(primes != 0) {
+                    result[count++] = (int) (low + 2L * (word * 64 + Long.numberOfTrailingZeros(primes)));
+                    primes &= primes - 1;
+                }
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+    
+    /**
+     * The odd primes up to n, with a plain sieve, for crossing off the segments.
+     */
+    private static int[] smallOddPrimes(int n) {
+        boolean[] composite = new boolean[n + 1];
+        int[] result = new int[Math.max(1, n / 2)];
+        int count = 0;
+        for(int i = 3; i <= n; i += 2) {
+            if(composite[i])
+                continue;
+            result[count++] = i;
+            for(long j = (long) i * i; j <= n; j += 2L * i)
+                composite[(int) j] = true;
+        }
+        return Arrays.copyOf(result, count);
+    }
+    
+    // An upper bound on the number of primes up to n, from Rosser and Schoenfeld
+    private static int estimateCount(int n) {
+        return n < 17 ? 6 : (int) (1.25506 * n / Math.log(n)) + 1;
+    }
+}
@@ -0,0 +1,126 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * The small primes, read from a table that ships with the library instead of sieved at startup.
+ * The table holds the primes up to 2^24, the deepest bound sieving is tuned to, as the halved gaps between
+ * consecutive odd primes, one byte each, which is enough below 2^24. Only as much of it as the largest bound asked for
+ * so far needs is read, and only the primes asked for are decoded. Primes past the table's bound come from
+ * {@link PrimeSieve}.
+ * To write the table again: {@code java -cp target/classes com.qiyanggeng.pictoprime4j.PrimeTable
+ * src/main/resources/small-primes.bin 16777216}
+ */
+final class PrimeTable {
+    private static final String RESOURCE = "small-primes.bin";
+    private static final int MAGIC = 0x50503450; // "PP4P"
+    private static final int HEADER_SIZE = 12;
+    private static final int MAX_BOUND = 1 << 24;
+    
+    // The header and the gaps read so far, empty if the table could not be read
+    private static byte[] prefix;
+    
+    private PrimeTable() {}
+    
+    /**
+     * Returns the primes from 2 to at most n, in increasing order, like {@link PrimeSieve#primesUpTo(int)}.
+     */
+    static int[] primesUpTo(int n) {
+        if(n < 2)
+            return new int[0];
+        // There are fewer primes up to n than the estimate, so fewer gaps after 3
+        final byte[] table = prefix(estimateCount(n));
+        if(n > bound(table))
+            return PrimeSieve.primesUpTo(n);
+        
+        final int count = ByteBuffer.wrap(table).getInt(8);
+        int[] primes = new int[Math.min(count, estimateCount(n))];
+        primes[0] = 2;
+        int found = 1;
+        for(int prime = 3, i = HEADER_SIZE; prime <= n; prime += 2*Byte.toUnsignedInt(table[i++])) {
+            primes[found++] = prime;
+            if(found == count)
+                break;
+        }
+        return found == primes.length ? primes : Arrays.copyOf(primes, found);
+    }
+    
+    /**
+     * The bound of the table, 0 if it could not be read.
+     */
+    static int bound() {
+        return bound(prefix(0));
+    }
+    
+    private static int bound(byte[] table) {
+        return table.length == 0 ? 0 : ByteBuffer.wrap(table).getInt(4);
+    }
+    
+    /**
+     * Returns the header and at least the given number of gaps, or all of them if the table has fewer, reading further
+     * into the table if the gaps read so far are not enough. It reads at least twice as far as the last time, so the
+     * table is read again only a few times however the bounds grow.
+     */
+    private static synchronized byte[] prefix(int gaps) {
+        if(prefix == null)
+            prefix = load(gaps);
+        int read = prefix.length - HEADER_SIZE;
+        if(prefix.length > 0 && read < gaps && read < ByteBuffer.wrap(prefix).getInt(8) - 2)
+            prefix = load(Math.max(gaps, 2*read));
+        return prefix;
+    }
+    
+    // An upper bound on the number of primes up to n, from Rosser and Schoenfeld
+    private static int estimateCount(int n) {
+        return n < 17 ? 6 : (int) (1.25506 * n / Math.log(n)) + 1;
+    }
+    
+    /**
+     * Reads the header of the table, the magic number, the bound and the number of primes, and then up to the given
+     * number of the gaps that follow, a byte per odd prime after 3.
+     * Read through a stream rather than a mapped file, which also works from inside a jar.
+     */
+    private static byte[] load(int gaps) {
+        try(InputStream stream = PrimeTable.class.getClassLoader().getResourceAsStream(RESOURCE)) {
+            if(stream == null)
+                return new byte[0];
+            ByteBuffer header = ByteBuffer.wrap(stream.readNBytes(HEADER_SIZE));
+            if(header.limit() < HEADER_SIZE || header.getInt(0) != MAGIC || header.getInt(8) < 2)
+                throw new IOException("The prime table is damaged");
+            int length = HEADER_SIZE + Math.min(gaps, header.getInt(8) - 2);
+            byte[] table = Arrays.copyOf(header.array(), length);
+            if(stream.readNBytes(table, HEADER_SIZE, length - HEADER_SIZE) != length - HEADER_SIZE)
+                throw new IOException("The prime table is damaged");
+            return table;
+        } catch(IOException exception) {
+            // The primes can still be sieved
+            exception.printStackTrace();
+            return new byte[0];
+        }
+    }
+    
+    public static void main(String[] args) throws IOException {
+        if(args.length != 2) {
+            System.err.println("Usage: PrimeTable <file> <bound>");
+            System.exit(2);
+        }
+        int bound = Integer.parseInt(args[1]);
+        if(bound < 3 || bound > MAX_BOUND)
+            throw new IllegalArgumentException("bound must be from 3 to 2^24: " + bound);
+        
+        int[] primes = PrimeSieve.primesUpTo(bound);
+        try(DataOutputStream out = new DataOutputStream(Files.newOutputStream(Path.of(args[0])))) {
+            out.writeInt(MAGIC);
+            out.writeInt(bound);
+            out.writeInt(primes.length);
+            for(int i = 2; i < primes.length; i++)
+                out.writeByte((primes[i] - primes[i - 1]) / 2);
+        }
+    }
+}
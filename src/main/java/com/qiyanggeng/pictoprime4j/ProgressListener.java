@@ -0,0 +1,10 @@
+package com.qiyanggeng.pictoprime4j;
+
+/**
+ * Receives periodic updates from a running search, on the thread generating its candidates.
+ * Implementations should return quickly, since the search does not generate candidates while they run.
+ */
+@FunctionalInterface
+public interface ProgressListener {
+    void onProgress(SearchProgress progress);
+}
@@ -0,0 +1,41 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * A stream of a {@link SplittableRandom} that counts how far it has advanced, so that it can be rebuilt at the same
+ * point from the seed it was split from, see {@link SearchCheckpoint}. Every value drawn advances the stream by one
+ * step, bounded ones included, and draws the same values as the stream itself would.
+ */
+final class ReplayableRandom implements RandomGenerator {
+    private final SplittableRandom random;
+    private long draws;
+    
+    /**
+     * @param draws The number of values drawn before, which are skipped
+     */
+    ReplayableRandom(SplittableRandom random, long draws) {
+        this.random = random;
+        for(long i = 0; i < draws; i++)
+            random.nextLong();
+        this.draws = draws;
+    }
+    
+    @Override
+    public long nextLong() {
+        draws++;
+        return random.nextLong();
+    }
+    
+    // Bounded draws call this, as they would on the stream itself
+    @Override
+    public int nextInt() {
+        draws++;
+        return random.nextInt();
+    }
+    
+    long draws() {
+        return draws;
+    }
+}
@@ -0,0 +1,150 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The state of a search at one point, from which {@link PrimeSearch#resume(Path, SearchOptions)} carries on, see
+ * {@link SearchOptions#withCheckpoint(Path, Duration)}.
+ * The candidates that were being tested when the checkpoint was taken count as tested, so a resumed search skips them,
+ * and it draws new candidates from a fresh sieve of the keyframe. A resumed seeded search therefore need not find the
+ * prime the uninterrupted search would have.
+ * @param settings The digit modification settings of the search, which the resumed search must share
+ * @param fixedSieveBound The sieve bound the options asked for, 0 if it was tuned
+ * @param rootSeed The seed the random streams were split from, drawn at random for an unseeded search
+ * @param keyFrameDraws The number of values drawn from the keyframe stream
+ * @param candidateDraws The number of values drawn from the candidate stream
+ * @param originalDigits The digits every restart starts from, which a degeneration changes
+ * @param tuneSieve Whether the sieve bound has yet to be tuned
+ * @param sieveBound The bound the search sieves to
+ * @param rekeyCheck The number of candidates past which the search rekeys next
+ * @param restartCheck The number of candidates past which the search restarts next
+ * @param degenerateCheck The number of failed batches past which the search degenerates next
+ * @param stats The stats of the search so far, its search time included
+ */
+record SearchCheckpoint(String settings, BigInteger original, boolean sophie, boolean sophieGermainPair, Long seed,
+                        int shardIndex, int shardCount, int fixedSieveBound, long rootSeed, long keyFrameDraws,
+                        long candidateDraws, String originalDigits, String keyFrame, int attempts, int failedViable,
+                        boolean tuneSieve, int sieveBound, int rekeyCheck, int restartCheck, int degenerateCheck,
+                        PrimeSearchStats stats, TestedCandidates tested) {
+    private static final long MAGIC = 0x5050344a43484b31L; // "PP4JCHK1"
+    
+    /**
+     * Writes the checkpoint next to the file and then moves it over the file, so that a crash never leaves the file
+     * half written: it holds either this checkpoint or the one before it.
+     */
+    void write(Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CRC32 checksum = new CRC32();
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), checksum));
+            out.writeLong(MAGIC);
+            out.writeUTF(settings);
+            writeString(out, original.toString());
+            out.writeBoolean(sophie);
+            out.writeBoolean(sophieGermainPair);
+            out.writeBoolean(seed != null);
+            out.writeLong(seed != null ? seed : 0);
+            out.writeInt(shardIndex);
+            out.writeInt(shardCount);
+            out.writeInt(fixedSieveBound);
+            out.writeLong(rootSeed);
+            out.writeLong(keyFrameDraws);
+            out.writeLong(candidateDraws);
+            writeString(out, originalDigits);
+            writeString(out, keyFrame);
+            out.writeInt(attempts);
+            out.writeInt(failedViable);
+            out.writeBoolean(tuneSieve);
+            out.writeInt(sieveBound);
+            out.writeInt(rekeyCheck);
+            out.writeInt(restartCheck);
+            out.writeInt(degenerateCheck);
+            out.writeUTF(ShardProtocol.encode(stats));
+            tested.writeTo(out);
+            out.writeLong(checksum.getValue());
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * @throws IOException If the file is not a checkpoint, or is damaged
+     */
+    static SearchCheckpoint read(Path path) throws IOException {
+        try(InputStream file = Files.newInputStream(path)) {
+            CRC32 checksum = new CRC32();
+            DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(file, 1 << 16),
+                    checksum));
+            if(in.readLong() != MAGIC)
+                throw new IOException("Not a search checkpoint: " + path);
+            String settings = in.readUTF();
+            BigInteger original = new BigInteger(readString(in));
+            boolean sophie = in.readBoolean();
+            boolean sophieGermainPair = in.readBoolean();
+            boolean seeded = in.readBoolean();
+            long seed = in.readLong();
+            int shardIndex = in.readInt();
+            int shardCount = in.readInt();
+            int fixedSieveBound = in.readInt();
+            long rootSeed = in.readLong();
+            long keyFrameDraws = in.readLong();
+            long candidateDraws = in.readLong();
+            String originalDigits = readString(in);
+            String keyFrame = readString(in);
+            int attempts = in.readInt();
+            int failedViable = in.readInt();
+            boolean tuneSieve = in.readBoolean();
+            int sieveBound = in.readInt();
+            int rekeyCheck = in.readInt();
+            int restartCheck = in.readInt();
+            int degenerateCheck = in.readInt();
+            PrimeSearchStats stats = ShardProtocol.decodeStats(in.readUTF().split(" "), 0);
+            TestedCandidates tested = TestedCandidates.readFrom(in);
+            long expected = checksum.getValue();
+            if(in.readLong() != expected)
+                throw new IOException("The checkpoint is damaged: " + path);
+            return new SearchCheckpoint(settings, original, sophie, sophieGermainPair, seeded ? seed : null,
+                    shardIndex, shardCount, fixedSieveBound, rootSeed, keyFrameDraws, candidateDraws, originalDigits,
+                    keyFrame, attempts, failedViable, tuneSieve, sieveBound, rekeyCheck, restartCheck, degenerateCheck,
+                    stats, tested);
+        } catch(EOFException | IllegalArgumentException | IndexOutOfBoundsException exception) {
+            throw new IOException("The checkpoint is damaged: " + path, exception);
+        }
+    }
+    
+    // Numbers of tens of thousands of digits do not fit in writeUTF
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeInt(value.length());
+        out.writeBytes(value);
+    }
+    
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if(length < 0)
+            throw new IOException("Negative string length: " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,141 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The live counters behind {@link PrimeSearchStats}. They are updated by the thread generating candidates and by
+ * the testers at the same time, and every update is also added to the parent's counters, if there is one, so an
+ * engine can keep totals over all of its searches without waiting for them to finish.
+ */
+class SearchCounters {
+    private final SearchCounters parent;
+    private final LongAdder candidatesGenerated = new LongAdder();
+    private final LongAdder duplicatesRejected = new LongAdder();
+    private final LongAdder mutationsSieved = new LongAdder();
+    private final LongAdder mutationsRejected = new LongAdder();
+    private final LongAdder probablePrimeTests = new LongAdder();
+    private final LongAdder probablePrimeTestNanos = new LongAdder();
+    private final LongAdder rekeys = new LongAdder();
+    private final LongAdder restarts = new LongAdder();
+    private final LongAdder degenerations = new LongAdder();
+    private final LongAdder conversionNanos = new LongAdder();
+    private final LongAdder searchNanos = new LongAdder();
+    private volatile int sieveBound;
+    
+    /**
+     * @param parent The counters every update is also added to, or null
+     */
+    SearchCounters(SearchCounters parent) {
+        this.parent = parent;
+    }
+    
+    void candidatesGenerated(long count) {
+        candidatesGenerated.add(count);
+        if(parent != null)
+            parent.candidatesGenerated(count);
+    }
+    
+    void duplicateRejected() {
+        duplicatesRejected.increment();
+        if(parent != null)
+            parent.duplicateRejected();
+    }
+    
+    void sieved(NeighborhoodSieve sieve) {
+        mutationsSieved.add(sieve.mutationCount());
+        mutationsRejected.add(sieve.mutationCount() - sieve.survivorCount());
+        if(parent != null)
+            parent.sieved(sieve);
+    }
+    
+    /**
+     * Records the bound the search sieves to from now on. An engine reports the bound of its latest search.
+     */
+    void sieveBound(int bound) {
+        sieveBound = bound;
+        if(parent != null)
+            parent.sieveBound(bound);
+    }
+    
+    void probablePrimeTested(long nanos) {
+        probablePrimeTests.increment();
+        probablePrimeTestNanos.add(nanos);
+        if(parent != null)
+            parent.probablePrimeTested(nanos);
+    }
+    
+    void rekeyed() {
+        rekeys.increment();
+        if(parent != null)
+            parent.rekeyed();
+    }
+    
+    void restarted() {
+        restarts.increment();
+        if(parent != null)
+            parent.restarted();
+    }
+    
+    void degenerated() {
+        degenerations.increment();
+        if(parent != null)
+            parent.degenerated();
+    }
+    
+    void converted(long nanos) {
+        conversionNanos.add(nanos);
+        if(parent != null)
+            parent.converted(nanos);
+    }
+    
+    void searched(long nanos) {
+        searchNanos.add(nanos);
+        if(parent != null)
+            parent.searched(nanos);
+    }
+    
+    /**
+     * Adds the counters of the search a checkpoint was taken from. They are not added to the parent, which did not do
+     * that work.
+     */
+    void restore(PrimeSearchStats stats) {
+        candidatesGenerated.add(stats.candidatesGenerated());
+        duplicatesRejected.add(stats.duplicatesRejected());
+        mutationsSieved.add(stats.mutationsSieved());
+        mutationsRejected.add(stats.mutationsRejected());
+        probablePrimeTests.add(stats.probablePrimeTests());
+        probablePrimeTestNanos.add(stats.probablePrimeTestTime().toNanos());
+        rekeys.add(stats.rekeys());
+        restarts.add(stats.restarts());
+        degenerations.add(stats.degenerations());
+        conversionNanos.add(stats.conversionTime().toNanos());
+        searchNanos.add(stats.searchTime().toNanos());
+    }
+    
+    long probablePrimeTests() {
+        return probablePrimeTests.sum();
+    }
+    
+    long probablePrimeTestNanos() {
+        return probablePrimeTestNanos.sum();
+    }
+    
+    PrimeSearchStats toStats() {
+        return toStats(searchNanos.sum());
+    }
+    
+    long candidatesGenerated() {
+        return candidatesGenerated.sum();
+    }
+    
+    /**
+     * @param searchNanos The search time to report, for a search that has not finished yet
+     */
+    PrimeSearchStats toStats(long searchNanos) {
+        return new PrimeSearchStats(candidatesGenerated.sum(), duplicatesRejected.sum(), mutationsSieved.sum(),
+                mutationsRejected.sum(), sieveBound, probablePrimeTests.sum(),
+                Duration.ofNanos(probablePrimeTestNanos.sum()), rekeys.sum(), restarts.sum(), degenerations.sum(),
+                Duration.ofNanos(conversionNanos.sum()), Duration.ofNanos(searchNanos));
+    }
+}
@@ -0,0 +1,113 @@
+package com.qiyanggeng.pictoprime4j;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * The Flight Recorder events of a search. They are disabled unless a recording enables them, which makes creating
+ * and committing them close to free, e.g.
+ * {@code java -XX:StartFlightRecording:filename=search.jfr,+com.qiyanggeng.pictoprime4j.PrimalityTest#enabled=true}.
+ * Search and keyframe events are enabled by the default settings, primality test events are not.
+ */
+final class SearchEvents {
+    private SearchEvents() {}
+    
+    @Name("com.qiyanggeng.pictoprime4j.Search")
+    @Label("Prime Search")
+    @Category("Pictoprime")
+    @Description("A search from an original number to a prime, with its counters")
+    static class Search extends Event {
+        @Label("Bits")
+        @Description("The size of the original number")
+        int bits;
+        
+        @Label("Outcome")
+        @Description("found, cached, timeout, cancelled or failed")
+        String outcome;
+        
+        @Label("Candidates Generated")
+        long candidatesGenerated;
+        
+        @Label("Duplicates Rejected")
+        long duplicatesRejected;
+        
+        @Label("Mutations Sieved")
+        long mutationsSieved;
+        
+        @Label("Mutations Rejected")
+        long mutationsRejected;
+        
+        @Label("Sieve Bound")
+        int sieveBound;
+        
+        @Label("Probable Prime Tests")
+        long probablePrimeTests;
+        
+        @Label("Probable Prime Test Time")
+        @Timespan
+        long probablePrimeTestTime;
+        
+        @Label("Rekeys")
+        long rekeys;
+        
+        @Label("Restarts")
+        long restarts;
+        
+        @Label("Degenerations")
+        long degenerations;
+        
+        @Label("Conversion Time")
+        @Timespan
+        long conversionTime;
+        
+        void set(PrimeSearchStats stats) {
+            candidatesGenerated = stats.candidatesGenerated();
+            duplicatesRejected = stats.duplicatesRejected();
+            mutationsSieved = stats.mutationsSieved();
+            mutationsRejected = stats.mutationsRejected();
+            sieveBound = stats.sieveBound();
+            probablePrimeTests = stats.probablePrimeTests();
+            probablePrimeTestTime = stats.probablePrimeTestTime().toNanos();
+            rekeys = stats.rekeys();
+            restarts = stats.restarts();
+            degenerations = stats.degenerations();
+            conversionTime = stats.conversionTime().toNanos();
+        }
+    }
+    
+    @Name("com.qiyanggeng.pictoprime4j.KeyFrame")
+    @Label("Keyframe Change")
+    @Category("Pictoprime")
+    @Description("The search moved to a new keyframe")
+    static class KeyFrame extends Event {
+        @Label("Kind")
+        @Description("REKEY, RESTART or DEGENERATE")
+        String kind;
+        
+        @Label("Candidates Generated")
+        @Description("The candidates the search handed to the testers before the change")
+        long candidatesGenerated;
+        
+        @Label("Sieve Survivors")
+        @Description("The mutations of the new keyframe that no small prime divides")
+        int survivors;
+    }
+    
+    @Name("com.qiyanggeng.pictoprime4j.PrimalityTest")
+    @Label("Primality Test")
+    @Category("Pictoprime")
+    @Description("One candidate going through the screening test, and the confirmation test if it passed")
+    @Enabled(false)
+    static class PrimalityTest extends Event {
+        @Label("Bits")
+        int bits;
+        
+        @Label("Probable Prime")
+        boolean probablePrime;
+    }
+}
@@ -0,0 +1,295 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Optional settings for a search. Instances are immutable, every with method returns a modified copy.
+ */
+public class SearchOptions {
+    private static final SearchOptions DEFAULTS = new SearchOptions(new Builder());
+    
+    private final boolean sophie;
+    private final boolean sophieGermainPair;
+    private final Instant deadline;
+    private final CancellationToken cancellationToken;
+    private final ProgressListener progressListener;
+    private final Duration progressInterval;
+    private final int priority;
+    private final PrimeCache cache;
+    private final int sieveBound;
+    private final Long seed;
+    private final int shardIndex;
+    private final int shardCount;
+    private final Path checkpoint;
+    private final Duration checkpointInterval;
+    
+    private SearchOptions(Builder builder) {
+        this.sophie = builder.sophie;
+        this.sophieGermainPair = builder.sophieGermainPair;
+        this.deadline = builder.deadline;
+        this.cancellationToken = builder.cancellationToken;
+        this.progressListener = builder.progressListener;
+        this.progressInterval = builder.progressInterval;
+        this.priority = builder.priority;
+        this.cache = builder.cache;
+        this.sieveBound = builder.sieveBound;
+        this.seed = builder.seed;
+        this.shardIndex = builder.shardIndex;
+        this.shardCount = builder.shardCount;
+        this.checkpoint = builder.checkpoint;
+        this.checkpointInterval = builder.checkpointInterval;
+    }
+    
+    /**
+     * The settings of an instance under construction, starting from the defaults.
+     */
+    private static class Builder {
+        private boolean sophie;
+        private boolean sophieGermainPair;
+        private Instant deadline;
+        private CancellationToken cancellationToken;
+        private ProgressListener progressListener;
+        private Duration progressInterval = Duration.ofSeconds(1);
+        private int priority = 1;
+        private PrimeCache cache;
+        private int sieveBound;
+        private Long seed;
+        private int shardIndex;
+        private int shardCount = 1;
+        private Path checkpoint;
+        private Duration checkpointInterval = Duration.ofMinutes(1);
+        
+        private Builder() {}
+        
+        private Builder(SearchOptions options) {
+            this.sophie = options.sophie;
+            this.sophieGermainPair = options.sophieGermainPair;
+            this.deadline = options.deadline;
+            this.cancellationToken = options.cancellationToken;
+            this.progressListener = options.progressListener;
+            this.progressInterval = options.progressInterval;
+            this.priority = options.priority;
+            this.cache = options.cache;
+            this.sieveBound = options.sieveBound;
+            this.seed = options.seed;
+            this.shardIndex = options.shardIndex;
+            this.shardCount = options.shardCount;
+            this.checkpoint = options.checkpoint;
+            this.checkpointInterval = options.checkpointInterval;
+        }
+    }
+    
+    /**
+     * Returns a copy of these options with the change applied.
+     */
+    private SearchOptions with(Consumer<Builder> change) {
+        Builder builder = new Builder(this);
+        change.accept(builder);
+        return new SearchOptions(builder);
+    }
+    
+    /**
+     * No companion number, no Sophie Germain pair, no deadline, no cancellation token, no progress updates, a priority
+     * of 1, no cache, a tuned sieve bound, no seed, a single shard and no checkpoints.
+     */
+    public static SearchOptions defaults() {
+        return DEFAULTS;
+    }
+    
+    /**
+     * Also looks for a companion prime once the prime p is found: the first prime k(p + 1) - 1 for the multipliers
+     * 2, 4, 6, 8, 10, 20, ..., 90, 100, 200 and so on, see {@link PrimeResult#sophieGermain()}. The candidates are
+     * tested on the engine's testers, and the companion is left out if none of them is prime or the deadline passes.
+     */
+    public SearchOptions withSophie(boolean sophie) {
+        return with(builder -> builder.sophie = sophie);
+    }
+    
+    /**
+     * Only accepts a prime p if 2p + 1 is prime too, which makes p a Sophie Germain prime and 2p + 1 its companion,
+     * so the pair is searched for in a single pass. Such pairs are much rarer than primes, the more so the bigger the
+     * number, so this suits small numbers best.
+     */
+    public SearchOptions withSophieGermainPair(boolean sophieGermainPair) {
+        return with(builder -> builder.sophieGermainPair = sophieGermainPair);
+    }
+    
+    /**
+     * Gives up on the search once the deadline passes, failing it with a {@link java.util.concurrent.TimeoutException}.
+     * @param deadline The deadline, or null for none
+     */
+    public SearchOptions withDeadline(Instant deadline) {
+        return with(builder -> builder.deadline = deadline);
+    }
+    
+    /**
+     * Sets the deadline to the given time from now.
+     */
+    public SearchOptions withTimeout(Duration timeout) {
+        return withDeadline(Instant.now().plus(timeout));
+    }
+    
+    /**
+     * Stops the search once the token is cancelled, failing it with a {@link java.util.concurrent.CancellationException}.
+     * Cancelling the future returned by an asynchronous search has the same effect.
+     */
+    public SearchOptions withCancellationToken(CancellationToken cancellationToken) {
+        return with(builder -> builder.cancellationToken = cancellationToken);
+    }
+    
+    public SearchOptions withProgressListener(ProgressListener progressListener) {
+        return withProgressListener(progressListener, progressInterval);
+    }
+    
+    /**
+     * @param progressInterval The minimum time between two progress updates
+     */
+    public SearchOptions withProgressListener(ProgressListener progressListener, Duration progressInterval) {
+        if(progressInterval.isNegative())
+            throw new IllegalArgumentException("progressInterval must not be negative: " + progressInterval);
+        return with(builder -> {
+            builder.progressListener = progressListener;
+            builder.progressInterval = Objects.requireNonNull(progressInterval);
+        });
+    }
+    
+    /**
+     * Searches running on the same engine at the same time share its testers in proportion to their priorities,
+     * so a search with priority 3 gets candidates tested three times as often as one with priority 1.
+     * @param priority The relative share of the testers, at least 1
+     */
+    public SearchOptions withPriority(int priority) {
+        if(priority < 1)
+            throw new IllegalArgumentException("priority must be positive: " + priority);
+        return with(builder -> builder.priority = priority);
+    }
+    
+    /**
+     * Returns the prime from the cache if the same number was searched before with the same settings, and adds the
+     * prime found to the cache otherwise. A cache can be shared by any number of searches.
+     * @param cache The cache, or null for none
+     */
+    public SearchOptions withCache(PrimeCache cache) {
+        return with(builder -> builder.cache = cache);
+    }
+    
+    /**
+     * Candidates are only tested if no prime up to the sieve bound divides them. By default a search starts at 17389
+     * and, once it has timed its first primality tests, moves to the bound that makes a prime cheapest to find, which
+     * is deeper for bigger numbers. The bound chosen is reported in {@link PrimeSearchStats#sieveBound()}.
+     * @param sieveBound A fixed bound from 2 up, or 0 to tune it
+     */
+    public SearchOptions withSieveBound(int sieveBound) {
+        if(sieveBound < 0 || sieveBound == 1)
+            throw new IllegalArgumentException("sieveBound must be 0 or at least 2: " + sieveBound);
+        return with(builder -> builder.sieveBound = sieveBound);
+    }
+    
+    /**
+     * Makes the search reproducible: the same seed, original number and options always give the same prime, whatever
+     * the number of testers or the load on them, so a slow search can be replayed and profiled offline.
+     * A seeded search does not tune its sieve bound, since the timings it would tune it from vary between runs; it
+     * sieves to 17389 unless {@link #withSieveBound(int)} says otherwise.
+     * @param seed The seed, or null to draw a random one
+     */
+    public SearchOptions withSeed(Long seed) {
+        return with(builder -> builder.seed = seed);
+    }
+    
+    /**
+     * Only mutates the digits at the positions p with p mod shardCount == shardIndex, counted from the most significant
+     * digit. Searches of the same number with different shards of the same count never draw the same candidate from a
+     * keyframe, so they can split the work between them, see {@link ShardCoordinator}.
+     * @param shardIndex The shard of this search, from 0 to shardCount - 1
+     * @param shardCount The number of shards, 1 for none
+     */
+    public SearchOptions withShard(int shardIndex, int shardCount) {
+        if(shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount)
+            throw new IllegalArgumentException("Not a shard: " + shardIndex + " of " + shardCount);
+        return with(builder -> {
+            builder.shardIndex = shardIndex;
+            builder.shardCount = shardCount;
+        });
+    }
+    
+    public SearchOptions withCheckpoint(Path checkpoint) {
+        return withCheckpoint(checkpoint, checkpointInterval);
+    }
+    
+    /**
+     * Saves the state of the search to the file every interval, from a background thread, so that a search that was
+     * stopped by a crash or a restart can go on from there with {@link PrimeSearch#resume(Path, SearchOptions)}
+     * instead of starting over. The file is deleted once the prime is found, a search that times out or is cancelled
+     * leaves its latest checkpoint behind.
+     * @param checkpoint The file, or null for no checkpoints
+     * @param checkpointInterval The time between two checkpoints
+     */
+    public SearchOptions withCheckpoint(Path checkpoint, Duration checkpointInterval) {
+        if(checkpointInterval.isNegative())
+            throw new IllegalArgumentException("checkpointInterval must not be negative: " + checkpointInterval);
+        return with(builder -> {
+            builder.checkpoint = checkpoint;
+            builder.checkpointInterval = Objects.requireNonNull(checkpointInterval);
+        });
+    }
+    
+    public boolean sophie() {
+        return sophie;
+    }
+    
+    public boolean sophieGermainPair() {
+        return sophieGermainPair;
+    }
+    
+    public Instant deadline() {
+        return deadline;
+    }
+    
+    public CancellationToken cancellationToken() {
+        return cancellationToken;
+    }
+    
+    public ProgressListener progressListener() {
+        return progressListener;
+    }
+    
+    public Duration progressInterval() {
+        return progressInterval;
+    }
+    
+    public int priority() {
+        return priority;
+    }
+    
+    public PrimeCache cache() {
+        return cache;
+    }
+    
+    public int sieveBound() {
+        return sieveBound;
+    }
+    
+    public Long seed() {
+        return seed;
+    }
+    
+    public int shardIndex() {
+        return shardIndex;
+    }
+    
+    public int shardCount() {
+        return shardCount;
+    }
+    
+    public Path checkpoint() {
+        return checkpoint;
+    }
+    
+    public Duration checkpointInterval() {
+        return checkpointInterval;
+    }
+}
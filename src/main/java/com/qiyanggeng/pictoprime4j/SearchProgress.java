@@ -0,0 +1,21 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.time.Duration;
+
+/**
+ * A snapshot of a running search.
+ * @param attempts The number of batches of candidates generated so far
+ * @param generated The number of distinct candidates generated so far
+ * @param tested The number of candidates that went through a primality test so far
+ * @param elapsed The time since the search started
+ * @param stats The search's counters so far
+ */
+public record SearchProgress(int attempts, int generated, long tested, Duration elapsed, PrimeSearchStats stats) {
+    /**
+     * The average number of primality tests per second since the search started.
+     */
+    public double testsPerSecond() {
+        long nanos = elapsed.toNanos();
+        return nanos == 0 ? 0 : tested * 1e9 / nanos;
+    }
+}
@@ -0,0 +1,238 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits a search between several worker processes, for numbers so big that a single process takes hours.
+ * Each worker is a {@link ShardWorker} searching one shard, see {@link SearchOptions#withShard(int, int)}: its
+ * keyframes only have the digits at its own positions mutated, and it moves through keyframes with random choices of
+ * its own, so the workers explore different candidates. The workers talk to the coordinator over a local TCP
+ * connection, see {@link ShardProtocol}, sending heartbeats with their stats and the prime they find. The coordinator
+ * confirms the first prime reported and cancels every worker.
+ * The workers are started on this machine, sharing its cores. A worker that stops sending heartbeats is given up on,
+ * and its shard is left unsearched.
+ */
+public class ShardCoordinator {
+    // How long the workers have to start up and connect
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(60);
+    private static final PrimalityTester CONFIRMATION = PrimalityTester.bailliePSW(0);
+    
+    private ShardCoordinator() {}
+    
+    /**
+     * Searches for a prime number by adjusting the original number, split between worker processes.
+     * The deadline, cancellation token and progress listener of the options apply to the whole search, the sieve
+     * bound, companion options and seed to every worker. A seeded search gives every shard a seed of its own. The
+     * coordinator assigns the shards itself, and has no cache or checkpoints.
+     * @param workerCount The number of worker processes to start
+     * @throws IllegalArgumentException If the options have a shard, a cache or a checkpoint
+     * @throws TimeoutException If the deadline passed
+     * @throws CancellationException If the search was cancelled
+     * @throws IllegalStateException If every worker failed
+     */
+    public static PrimeResult search(BigInteger original, int workerCount, SearchOptions options)
+            throws IOException, TimeoutException {
+        if(workerCount < 1)
+            throw new IllegalArgumentException("workerCount must be positive: " + workerCount);
+        if(options.shardCount() > 1)
+            throw new IllegalArgumentException("The coordinator assigns the shards, the options must not have one");
+        if(options.cache() != null)
+            throw new IllegalArgumentException("A sharded search cannot use a cache");
+        if(options.checkpoint() != null)
+            throw new IllegalArgumentException("A sharded search cannot be checkpointed");
+        
+        long startTime = System.nanoTime();
+        try(ServerSocket server = new ServerSocket(0, workerCount, InetAddress.getLoopbackAddress())) {
+            List<Process> workers = new ArrayList<>();
+            try {
+                for(int i = 0; i < workerCount; i++)
+                    workers.add(startWorker(server.getLocalPort()));
+                return new Coordination(original, workerCount, options, startTime).run(server);
+            } finally {
+                workers.forEach(Process::destroy);
+            }
+        }
+    }
+    
+    private static Process startWorker(int port) throws IOException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), ShardWorker.class.getName(),
+                InetAddress.getLoopbackAddress().getHostAddress(), String.valueOf(port))
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+    }
+    
+    /**
+     * The state of one sharded search.
+     */
+    private static class Coordination {
+        private final BigInteger original;
+        private final int shardCount;
+        private final SearchOptions options;
+        private final long startTime;
+        private final long[] seeds;
+        private final int testerCount;
+        private final CompletableFuture<PrimeResult> winner = new CompletableFuture<>();
+        private final List<ShardProtocol.Connection> connections = new CopyOnWriteArrayList<>();
+        // The latest stats each shard sent
+        private final Map<Integer, PrimeSearchStats> stats = new ConcurrentHashMap<>();
+        private final AtomicInteger liveWorkers = new AtomicInteger();
+        private volatile boolean allConnected;
+        
+        private Coordination(BigInteger original, int shardCount, SearchOptions options, long startTime) {
+            this.original = original;
+            this.shardCount = shardCount;
+            this.options = options;
+            this.startTime = startTime;
+            this.testerCount = Math.max(1, Runtime.getRuntime().availableProcessors() / shardCount);
+            
+            this.seeds = new long[shardCount];
+            if(options.seed() != null) {
+                SplittableRandom random = new SplittableRandom(options.seed());
+                for(int i = 0; i < shardCount; i++)
+                    seeds[i] = random.nextLong();
+            }
+        }
+        
+        private PrimeResult run(ServerSocket server) throws TimeoutException {
+            Thread.ofVirtual().name("pictoprime-coordinator-accept").start(() -> accept(server));
+            try {
+                return await();
+            } finally {
+                for(ShardProtocol.Connection connection : connections) {
+                    try(connection) {
+                        connection.send(ShardProtocol.CANCEL);
+                    } catch(IOException ignored) {
+                        // The worker is gone already
+                    }
+                }
+            }
+        }
+        
+        private void accept(ServerSocket server) {
+            try {
+                server.setSoTimeout((int) CONNECT_TIMEOUT.toMillis());
+                for(int shard = 0; shard < shardCount && !winner.isDone(); shard++) {
+                    Socket socket = server.accept();
+                    socket.setSoTimeout((int) ShardProtocol.WORKER_TIMEOUT.toMillis());
+                    ShardProtocol.Connection connection = new ShardProtocol.Connection(socket);
+                    connections.add(connection);
+                    liveWorkers.incrementAndGet();
+                    connection.send(ShardProtocol.SEARCH, String.valueOf(shard), String.valueOf(shardCount),
+                            String.valueOf(testerCount),
+                            options.seed() == null ? ShardProtocol.NONE : String.valueOf(seeds[shard]),
+                            String.valueOf(options.sieveBound()), String.valueOf(options.sophie()),
+                            String.valueOf(options.sophieGermainPair()), original.toString());
+                    final int shardIndex = shard;
+                    Thread.ofVirtual().name("pictoprime-coordinator-shard-" + shard)
+                            .start(() -> listen(shardIndex, connection));
+                }
+            } catch(SocketTimeoutException exception) {
+                // Search with the workers that did connect
+            } catch(IOException exception) {
+                if(!winner.isDone())
+                    winner.completeExceptionally(new IllegalStateException("Could not accept a worker", exception));
+            }
+            allConnected = true;
+            if(liveWorkers.get() == 0)
+                winner.completeExceptionally(new IllegalStateException("No worker connected"));
+        }
+        
+        /**
+         * Reads the messages of a worker until it finds a prime, fails or goes silent.
+         */
+        private void listen(int shard, ShardProtocol.Connection connection) {
+            try {
+                String[] message;
+                while((message = connection.receive()) != null) {
+                    switch(message[0]) {
+                        case ShardProtocol.HEARTBEAT -> stats.put(shard, ShardProtocol.decodeStats(message, 1));
+                        case ShardProtocol.PRIME -> {
+                            stats.put(shard, ShardProtocol.decodeStats(message, 3));
+                            BigInteger prime = new BigInteger(message[1]);
+                            BigInteger companion = message[2].equals(ShardProtocol.NONE) ? null
+                                    : new BigInteger(message[2]);
+                            // Trust no worker with the result
+                            if(CONFIRMATION.isProbablePrime(prime)) {
+                                if(companion != null && !CONFIRMATION.isProbablePrime(companion))
+                                    companion = null;
+                                winner.complete(toResult(prime, companion));
+                                return;
+                            }
+                        }
+                        case ShardProtocol.FAILED -> {
+                            return;
+                        }
+                        default -> throw new IOException("Unknown message from shard " + shard + ": " + message[0]);
+                    }
+                }
+            } catch(IOException | RuntimeException ignored) {
+                // A worker that stops making sense is given up on like one that stops responding
+            } finally {
+                if(liveWorkers.decrementAndGet() == 0 && allConnected && !winner.isDone())
+                    winner.completeExceptionally(new IllegalStateException("Every worker failed"));
+            }
+        }
+        
+        private PrimeResult await() throws TimeoutException {
+            ProgressListener listener = options.progressListener();
+            long progressIntervalNanos = options.progressInterval().toNanos();
+            long nextProgress = startTime + progressIntervalNanos;
+            CancellationToken token = options.cancellationToken();
+            while(true) {
+                try {
+                    return winner.get(10, TimeUnit.MILLISECONDS);
+                } catch(TimeoutException ignored) {
+                    // Not found yet
+                } catch(ExecutionException exception) {
+                    if(exception.getCause() instanceof RuntimeException runtimeException)
+                        throw runtimeException;
+                    throw new IllegalStateException(exception.getCause());
+                } catch(InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while searching", exception);
+                }
+                
+                if(token != null && token.isCancelled())
+                    throw new CancellationException("The search was cancelled");
+                if(options.deadline() != null && Instant.now().isAfter(options.deadline()))
+                    throw new TimeoutException("The search passed its deadline");
+                long now = System.nanoTime();
+                if(listener != null && now - nextProgress >= 0) {
+                    nextProgress = now + progressIntervalNanos;
+                    PrimeSearchStats sum = ShardProtocol.sum(stats.values());
+                    listener.onProgress(new SearchProgress(0, (int) sum.candidatesGenerated(), sum.probablePrimeTests(),
+                            Duration.ofNanos(now - startTime), sum));
+                }
+            }
+        }
+        
+        private PrimeResult toResult(BigInteger prime, BigInteger companion) {
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - startTime);
+            PrimeSearchStats sum = ShardProtocol.sum(stats.values());
+            return new PrimeResult(prime, companion, 0, (int) sum.candidatesGenerated(), testerCount * shardCount,
+                    elapsed, sum);
+        }
+    }
+}
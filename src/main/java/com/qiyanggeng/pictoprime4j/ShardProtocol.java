@@ -0,0 +1,122 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+
+/**
+ * The messages between a {@link ShardCoordinator} and its {@link ShardWorker}s: one line of ASCII per message, the
+ * fields separated by spaces.
+ * <pre>
+ * coordinator to worker:
+ *     SEARCH shardIndex shardCount testerCount seed sieveBound sophie sophieGermainPair original
+ *     CANCEL
+ * worker to coordinator:
+ *     HEARTBEAT stats
+ *     PRIME prime companion stats
+ *     FAILED message
+ * </pre>
+ * where stats are the fields of {@link PrimeSearchStats} in order, with durations in nanoseconds, and companion is
+ * {@code -} if there is none, as is the seed of an unseeded search. A worker sends a heartbeat every
+ * {@link #HEARTBEAT_INTERVAL}.
+ */
+final class ShardProtocol {
+    static final String SEARCH = "SEARCH";
+    static final String CANCEL = "CANCEL";
+    static final String HEARTBEAT = "HEARTBEAT";
+    static final String PRIME = "PRIME";
+    static final String FAILED = "FAILED";
+    static final String NONE = "-";
+    
+    static final Duration HEARTBEAT_INTERVAL = Duration.ofSeconds(1);
+    // A worker not heard from for this long is given up on
+    static final Duration WORKER_TIMEOUT = Duration.ofSeconds(10);
+    
+    private ShardProtocol() {}
+    
+    /**
+     * One end of a connection, whose lines can be sent from any thread.
+     */
+    static final class Connection implements AutoCloseable {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final BufferedWriter out;
+        
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+            this.out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.ISO_8859_1));
+        }
+        
+        /**
+         * Returns the fields of the next line, or null once the other end closed the connection.
+         */
+        String[] receive() throws IOException {
+            String line = in.readLine();
+            return line == null ? null : line.split(" ");
+        }
+        
+        synchronized void send(String... fields) throws IOException {
+            out.write(String.join(" ", fields));
+            out.newLine();
+            out.flush();
+        }
+        
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+    
+    static String encode(PrimeSearchStats stats) {
+        return stats.candidatesGenerated() + " " + stats.duplicatesRejected() + " " + stats.mutationsSieved() + " "
+                + stats.mutationsRejected() + " " + stats.sieveBound() + " " + stats.probablePrimeTests() + " "
+                + stats.probablePrimeTestTime().toNanos() + " " + stats.rekeys() + " " + stats.restarts() + " "
+                + stats.degenerations() + " " + stats.conversionTime().toNanos() + " " + stats.searchTime().toNanos();
+    }
+    
+    /**
+     * Decodes the stats starting at the given field.
+     */
+    static PrimeSearchStats decodeStats(String[] fields, int from) {
+        return new PrimeSearchStats(Long.parseLong(fields[from]), Long.parseLong(fields[from + 1]),
+                Long.parseLong(fields[from + 2]), Long.parseLong(fields[from + 3]), Integer.parseInt(fields[from + 4]),
+                Long.parseLong(fields[from + 5]), Duration.ofNanos(Long.parseLong(fields[from + 6])),
+                Long.parseLong(fields[from + 7]), Long.parseLong(fields[from + 8]), Long.parseLong(fields[from + 9]),
+                Duration.ofNanos(Long.parseLong(fields[from + 10])), Duration.ofNanos(Long.parseLong(fields[from + 11])));
+    }
+    
+    /**
+     * Sums the stats of the workers. The sieve bound is the deepest any of them used, and the search time the longest.
+     */
+    static PrimeSearchStats sum(Collection<PrimeSearchStats> stats) {
+        long candidatesGenerated = 0, duplicatesRejected = 0, mutationsSieved = 0, mutationsRejected = 0;
+        long probablePrimeTests = 0, rekeys = 0, restarts = 0, degenerations = 0;
+        int sieveBound = 0;
+        Duration probablePrimeTestTime = Duration.ZERO, conversionTime = Duration.ZERO, searchTime = Duration.ZERO;
+        for(PrimeSearchStats s : stats) {
+            candidatesGenerated += s.candidatesGenerated();
+            duplicatesRejected += s.duplicatesRejected();
+            mutationsSieved += s.mutationsSieved();
+            mutationsRejected += s.mutationsRejected();
+            sieveBound = Math.max(sieveBound, s.sieveBound());
+            probablePrimeTests += s.probablePrimeTests();
+            probablePrimeTestTime = probablePrimeTestTime.plus(s.probablePrimeTestTime());
+            rekeys += s.rekeys();
+            restarts += s.restarts();
+            degenerations += s.degenerations();
+            conversionTime = conversionTime.plus(s.conversionTime());
+            if(s.searchTime().compareTo(searchTime) > 0)
+                searchTime = s.searchTime();
+        }
+        return new PrimeSearchStats(candidatesGenerated, duplicatesRejected, mutationsSieved, mutationsRejected,
+                sieveBound, probablePrimeTests, probablePrimeTestTime, rekeys, restarts, degenerations, conversionTime,
+                searchTime);
+    }
+}
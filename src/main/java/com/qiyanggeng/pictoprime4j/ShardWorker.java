@@ -0,0 +1,92 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A process searching one shard for a {@link ShardCoordinator}. It connects to the coordinator, receives its shard,
+ * searches it on an engine of its own while sending heartbeats with its stats, and reports the prime it finds.
+ * It stops once the coordinator cancels the search or goes away.
+ * <pre>
+ * java -cp ... com.qiyanggeng.pictoprime4j.ShardWorker host port
+ * </pre>
+ */
+public class ShardWorker {
+    public static void main(String[] args) throws IOException {
+        if(args.length != 2) {
+            System.err.println("Usage: ShardWorker <host> <port>");
+            System.exit(2);
+        }
+        
+        try(ShardProtocol.Connection connection = new ShardProtocol.Connection(
+                new Socket(args[0], Integer.parseInt(args[1])))) {
+            work(connection);
+        }
+        // The engine's threads are daemons, but a reader may still be blocked on the closed socket
+        System.exit(0);
+    }
+    
+    private static void work(ShardProtocol.Connection connection) throws IOException {
+        String[] search = connection.receive();
+        if(search == null || !search[0].equals(ShardProtocol.SEARCH))
+            throw new IOException("Expected a search from the coordinator");
+        
+        final CancellationToken token = new CancellationToken();
+        SearchOptions options = SearchOptions.defaults()
+                .withShard(Integer.parseInt(search[1]), Integer.parseInt(search[2]))
+                .withSeed(search[4].equals(ShardProtocol.NONE) ? null : Long.valueOf(search[4]))
+                .withSieveBound(Integer.parseInt(search[5]))
+                .withSophie(Boolean.parseBoolean(search[6]))
+                .withSophieGermainPair(Boolean.parseBoolean(search[7]))
+                .withCancellationToken(token);
+        BigInteger original = new BigInteger(search[8]);
+        
+        try(PrimeSearchEngine engine = new PrimeSearchEngine(Integer.parseInt(search[3]))) {
+            Thread.ofVirtual().name("pictoprime-shard-cancel").start(() -> awaitCancel(connection, token));
+            Thread heartbeat = Thread.ofVirtual().name("pictoprime-shard-heartbeat").start(() -> {
+                try {
+                    while(!token.isCancelled()) {
+                        Thread.sleep(ShardProtocol.HEARTBEAT_INTERVAL);
+                        connection.send(ShardProtocol.HEARTBEAT, ShardProtocol.encode(engine.stats()));
+                    }
+                } catch(InterruptedException | IOException ignored) {
+                    // The search is over
+                }
+            });
+            
+            try {
+                PrimeResult result = PrimeSearch.search(engine, original, Duration.ZERO, options, null);
+                heartbeat.interrupt();
+                connection.send(ShardProtocol.PRIME, result.prime().toString(),
+                        result.sophieGermain() == null ? ShardProtocol.NONE : result.sophieGermain().toString(),
+                        ShardProtocol.encode(result.stats()));
+            } catch(CancellationException exception) {
+                // Another worker found a prime
+            } catch(TimeoutException | RuntimeException exception) {
+                connection.send(ShardProtocol.FAILED, String.valueOf(exception).replace('\n', ' '));
+            } finally {
+                token.cancel();
+                heartbeat.interrupt();
+            }
+        }
+    }
+    
+    /**
+     * Cancels the search once the coordinator says so or the connection is lost.
+     */
+    private static void awaitCancel(ShardProtocol.Connection connection, CancellationToken token) {
+        try {
+            String[] message;
+            do {
+                message = connection.receive();
+            } while(message != null && !message[0].equals(ShardProtocol.CANCEL));
+        } catch(IOException ignored) {
+            // Same as being cancelled
+        }
+        token.cancel();
+    }
+}
@@ -0,0 +1,101 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Chooses how far the small prime sieve goes for a search.
+ * Sieving with one more prime p costs the same for every mutation of a keyframe, but only spares the testers the
+ * mutations p divides, so it pays off while a primality test costs more than sieving with p. Tests get
+ * expensive quickly as numbers grow, so big numbers are worth sieving much deeper than small ones.
+ * The choice is made from what a search measures about itself: the time its first sieve took and the average time
+ * of its first primality tests.
+ */
+final class SieveDepth {
+    /**
+     * The bound every search starts with, and the only one used when it is not tuned.
+     */
+    static final int DEFAULT_BOUND = 17389;
+    // The bounds tuning picks from are the powers of two between these
+    private static final int MIN_BOUND_LOG = 10;
+    private static final int MAX_BOUND_LOG = 24;
+    // e^gamma, from Mertens' third theorem
+    private static final double EXP_EULER_GAMMA = 1.7810724179901979;
+    
+    // The filters for the default bound and the bounds tuning picks from, which are all a search can share
+    private static final ConcurrentHashMap<Integer, SmallPrimeFilter> FILTERS = new ConcurrentHashMap<>();
+    
+    private SieveDepth() {}
+    
+    /**
+     * The filter for the primes up to the bound. The filters for the default bound and the powers of two tuning picks
+     * from are built on first use and shared by all searches afterwards. Any other bound, which a caller fixed, gets a
+     * filter of its own, so that the bounds callers ask for do not pile up.
+     */
+    static SmallPrimeFilter filter(int bound) {
+        if(!isShared(bound))
+            return new SmallPrimeFilter(PrimeTable.primesUpTo(bound));
+        return FILTERS.computeIfAbsent(bound, b -> new SmallPrimeFilter(PrimeTable.primesUpTo(b)));
+    }
+    
+    private static boolean isShared(int bound) {
+        return bound == DEFAULT_BOUND
+                || Integer.bitCount(bound) == 1 && bound >= 1 << MIN_BOUND_LOG && bound <= 1 << MAX_BOUND_LOG;
+    }
+    
+    /**
+     * Picks the bound that minimizes the expected time to find a prime, among the current bound and the powers of two
+     * from 2^10 to 2^24.
+     * By Mertens' theorem, the fraction of mutations surviving a sieve to B falls like 1/ln B, and so does the
+     * number of tests expected per prime, about ln N / (e^gamma ln B). Each keyframe costs a sieve proportional to its
+     * mutation count times the number of primes below B, and the cost is shared by the candidates drawn from it:
+     * its survivors, but no more than candidatesPerKeyFrame, and no more than the search is expected to need.
+     * @param digits The number of digits of the candidates
+     * @param testNanos The average time of a primality test on the search's candidates
+     * @param sieveNanos The time it took to sieve a keyframe to the current bound
+     * @param bound The current bound
+     * @param mutationCount The number of mutations of that keyframe
+     * @param survivorCount The number of them that survived
+     * @param candidatesPerKeyFrame The number of candidates drawn from a keyframe before it is replaced
+     */
+    static int choose(int digits, double testNanos, long sieveNanos, int bound, int mutationCount, int survivorCount,
+                      int candidatesPerKeyFrame) {
+        if(mutationCount == 0)
+            return bound;
+        
+        final double nanosPerPrimeAndMutation = (double) sieveNanos / mutationCount / filter(bound).primeCount();
+        final double survival = Math.max(1, survivorCount) / (double) mutationCount;
+        
+        int best = bound;
+        double bestCost = cost(bound, digits, testNanos, nanosPerPrimeAndMutation, survival, bound, mutationCount,
+                candidatesPerKeyFrame);
+        for(int log = MIN_BOUND_LOG; log <= MAX_BOUND_LOG; log++) {
+            int candidate = 1 << log;
+            double cost = cost(candidate, digits, testNanos, nanosPerPrimeAndMutation, survival, bound, mutationCount,
+                    candidatesPerKeyFrame);
+            if(cost < bestCost) {
+                best = candidate;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * The expected time to find a prime when sieving to the given bound, up to a factor that is the same for all
+     * bounds.
+     */
+    private static double cost(int candidate, int digits, double testNanos, double nanosPerPrimeAndMutation,
+                               double survival, int bound, int mutationCount, int candidatesPerKeyFrame) {
+        double candidateSurvival = survival * Math.log(bound) / Math.log(candidate);
+        double testsPerPrime = digits * Math.log(10) / (EXP_EULER_GAMMA * Math.log(candidate));
+        double candidatesUsed = Math.min(Math.min(candidateSurvival * mutationCount, candidatesPerKeyFrame),
+                testsPerPrime);
+        double sieveNanos = nanosPerPrimeAndMutation * mutationCount * primeCountEstimate(candidate);
+        return candidateSurvival * (testNanos + sieveNanos / candidatesUsed);
+    }
+    
+    // Legendre's approximation of the number of primes up to n
+    private static double primeCountEstimate(int n) {
+        return n / (Math.log(n) - 1);
+    }
+}
@@ -0,0 +1,133 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Trial division against a fixed set of small primes.
+ * The primes are packed into groups whose product fits in a long, and the group products are arranged in a
+ * remainder tree: a candidate is reduced modulo ever smaller products on the way down, so each group gets a
+ * long residue for the price of a few BigInteger divisions, and the individual primes are checked with primitive
+ * arithmetic on that residue.
+ */
+class SmallPrimeFilter {
+    private final int[] primes;
+    // groupStart[g] is the index in primes of the first factor of group g, groupStart[groupCount] == primes.length
+    private final int[] groupStart;
+    // tree[0] holds the group products, tree[k + 1][i] == tree[k][2i] * tree[k][2i + 1]
+    private final BigInteger[][] tree;
+    
+    SmallPrimeFilter(Collection<Integer> smallPrimes) {
+        this(smallPrimes.stream().mapToInt(Integer::intValue).toArray());
+    }
+    
+    /**
+     * @param smallPrimes The primes to divide by, in increasing order, not modified
+     */
+    SmallPrimeFilter(int[] smallPrimes) {
+        this.primes = smallPrimes;
+        
+        List<Integer> starts = new ArrayList<>();
+        List<BigInteger> products = new ArrayList<>();
+        long product = 1;
+        for(int i = 0; i < primes.length; i++) {
+            if(i == 0 || product > Long.MAX_VALUE / primes[i]) {
+                if(i != 0)
+                    products.add(BigInteger.valueOf(product));
+                starts.add(i);
+                product = 1;
+            }
+            product *= primes[i];
+        }
+        if(primes.length != 0)
+            products.add(BigInteger.valueOf(product));
+        starts.add(primes.length);
+        
+        this.groupStart = starts.stream().mapToInt(Integer::intValue).toArray();
+        
+        List<BigInteger[]> levels = new ArrayList<>();
+        levels.add(products.toArray(BigInteger[]::new));
+        while(levels.get(levels.size() - 1).length > 1) {
+            BigInteger[] below = levels.get(levels.size() - 1);
+            BigInteger[] level = new BigInteger[(below.length + 1) / 2];
+            for(int i = 0; i < level.length; i++)
+                level[i] = 2*i + 1 < below.length ? below[2*i].multiply(below[2*i + 1]) : below[2*i];
+            levels.add(level);
+        }
+        this.tree = levels.toArray(BigInteger[][]::new);
+    }
+    
+    /**
+     * Returns true if none of the small primes divide the value.
+     * A value equal to one of the small primes is considered divisible.
+     */
+    boolean isNotDivisible(BigInteger value) {
+        if(primes.length == 0)
+            return true;
+        // Most candidates have a very small factor, so try the first group on its own before descending the tree
+        if(!isGroupNotDivisible(0, value.remainder(tree[0][0]).longValue()))
+            return false;
+        return isNotDivisible(tree.length - 1, 0, value);
+    }
+    
+    private boolean isNotDivisible(int level, int index, BigInteger value) {
+        if(level == 0)
+            return index == 0 || isGroupNotDivisible(index, value.longValue());
+        
+        for(int child = 2*index; child <= 2*index + 1 && child < tree[level - 1].length; child++) {
+            if(!isNotDivisible(level - 1, child, reduce(value, tree[level - 1][child])))
+                return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Returns the value modulo each of the small primes, in the same order as {@link #primes()}.
+     */
+    int[] residues(BigInteger value) {
+        int[] result = new int[primes.length];
+        if(primes.length != 0)
+            residues(tree.length - 1, 0, reduce(value, tree[tree.length - 1][0]), result);
+        return result;
+    }
+    
+    private void residues(int level, int index, BigInteger value, int[] result) {
+        if(level == 0) {
+            long residue = value.longValue();
+            for(int i = groupStart[index]; i < groupStart[index + 1]; i++)
+                result[i] = (int) (residue % primes[i]);
+            return;
+        }
+        
+        for(int child = 2*index; child <= 2*index + 1 && child < tree[level - 1].length; child++) {
+            BigInteger modulus = tree[level - 1][child];
+            residues(level - 1, child, reduce(value, modulus), result);
+        }
+    }
+    
+    // Skips the division when the value is already a residue
+    private static BigInteger reduce(BigInteger value, BigInteger modulus) {
+        return value.signum() >= 0 && value.compareTo(modulus) < 0 ? value : value.mod(modulus);
+    }
+    
+    private boolean isGroupNotDivisible(int group, long residue) {
+        for(int i = groupStart[group]; i < groupStart[group + 1]; i++)
+            if(residue % primes[i] == 0)
+                return false;
+        return true;
+    }
+    
+    int[] primes() {
+        return primes.clone();
+    }
+    
+    int primeCount() {
+        return primes.length;
+    }
+    
+    int groupCount() {
+        return tree[0].length;
+    }
+}
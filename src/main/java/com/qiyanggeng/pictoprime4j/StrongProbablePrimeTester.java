@@ -0,0 +1,91 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Miller-Rabin rounds with the base fixed to 2, which is the cheapest base to exponentiate.
+ */
+class StrongProbablePrimeTester implements PrimalityTester {
+    static final StrongProbablePrimeTester INSTANCE = new StrongProbablePrimeTester();
+    
+    // BigInteger.modPow hands Montgomery multiplications of up to 512 ints to HotSpot intrinsics, which beat
+    // MontgomeryModulus. Past that it falls back to plain Java, and the doubling ladder below is at least as fast.
+    private static final int INTRINSIC_BIT_LIMIT = 512 * 32;
+    // How many squarings the ladder does between checks for cancellation
+    private static final int CANCELLATION_CHECK_INTERVAL = 64;
+    
+    private StrongProbablePrimeTester() {}
+    
+    @Override
+    public boolean isProbablePrime(BigInteger value) {
+        return isStrongProbablePrimeBaseTwo(value, () -> false);
+    }
+    
+    @Override
+    public boolean isProbablePrime(BigInteger value, BooleanSupplier cancelled) {
+        return isStrongProbablePrimeBaseTwo(value, cancelled);
+    }
+    
+    /**
+     * Returns true if the value is 2 or a strong probable prime to base 2.
+     * Below the intrinsic limit the exponentiation is a single modPow call, which cannot be cancelled.
+     */
+    static boolean isStrongProbablePrimeBaseTwo(BigInteger value, BooleanSupplier cancelled) {
+        if(value.signum() <= 0 || value.equals(BigInteger.ONE))
+            return false;
+        if(!value.testBit(0))
+            return value.equals(BigInteger.TWO);
+        
+        // value - 1 = d * 2^s with d odd
+        final BigInteger valueMinusOne = value.subtract(BigInteger.ONE);
+        final int s = valueMinusOne.getLowestSetBit();
+        final BigInteger d = valueMinusOne.shiftRight(s);
+        
+        if(value.bitLength() <= INTRINSIC_BIT_LIMIT)
+            return isStrongProbablePrime(value, valueMinusOne, BigInteger.TWO.modPow(d, value), s);
+        
+        final MontgomeryModulus modulus = new MontgomeryModulus(value);
+        final long[] one = modulus.one();
+        final long[] minusOne = modulus.negate(one);
+        
+        // Left to right binary exponentiation of 2^d, where multiplying by the base is just a doubling
+        long[] x = one.clone();
+        for(int bit = d.bitLength() - 1; bit >= 0; bit--) {
+            if(bit % CANCELLATION_CHECK_INTERVAL == 0 && cancelled.getAsBoolean())
+                throw new CancellationException();
+            modulus.square(x, x);
+            if(d.testBit(bit))
+                modulus.doubleValue(x, x);
+        }
+        
+        if(Arrays.equals(x, one) || Arrays.equals(x, minusOne))
+            return true;
+        for(int r = 1; r < s; r++) {
+            modulus.square(x, x);
+            if(Arrays.equals(x, minusOne))
+                return true;
+            if(Arrays.equals(x, one))
+                return false;
+        }
+        return false;
+    }
+    
+    /**
+     * Finishes a Miller-Rabin round given x = base^d mod value, where value - 1 = d * 2^s.
+     */
+    private static boolean isStrongProbablePrime(BigInteger value, BigInteger valueMinusOne, BigInteger x, int s) {
+        if(x.equals(BigInteger.ONE) || x.equals(valueMinusOne))
+            return true;
+        for(int r = 1; r < s; r++) {
+            x = x.multiply(x).mod(value);
+            if(x.equals(valueMinusOne))
+                return true;
+            if(x.equals(BigInteger.ONE))
+                return false;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,139 @@
+package com.qiyanggeng.pictoprime4j;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The fingerprints of the candidates a search has tested, see {@link DigitBuffer#fingerprint()}, so that it does not
+ * test the same number twice. A candidate takes up a long in an open addressing table instead of a BigInteger.
+ * Memory stays bounded however long the search runs: once the current table holds GENERATION_SIZE fingerprints, the
+ * previous table is dropped and a new one is started. Every candidate is a mutation of a keyframe, which itself is a
+ * mutation of the keyframe before it, so duplicates come from recent keyframes, which the two tables still cover.
+ * Testing a duplicate of a candidate that was forgotten only costs a redundant test.
+ */
+final class TestedCandidates {
+    private static final int GENERATION_SIZE = 1 << 18;
+    private static final int INITIAL_CAPACITY = 1 << 10;
+    // 0 marks an empty slot, so a fingerprint of 0 is stored as this instead
+    private static final long ZERO_REPLACEMENT = 0x9E3779B97F4A7C15L;
+    
+    // Kept at most half full, so that probes stay short
+    private long[] current = new long[INITIAL_CAPACITY];
+    private int currentCount;
+    private long[] previous = new long[INITIAL_CAPACITY];
+    private int size;
+    
+    /**
+     * Adds the fingerprint, returning false if it was already there.
+     */
+    boolean add(long fingerprint) {
+        final long key = fingerprint == 0 ? ZERO_REPLACEMENT : fingerprint;
+        if(contains(previous, key))
+            return false;
+        if(!insert(current, key))
+            return false;
+        
+        size++;
+        if(++currentCount == GENERATION_SIZE) {
+            previous = current;
+            current = new long[INITIAL_CAPACITY];
+            currentCount = 0;
+        } else if(2*currentCount > current.length) {
+            long[] grown = new long[2*current.length];
+            for(long existing : current)
+                if(existing != 0)
+                    insert(grown, existing);
+            current = grown;
+        }
+        return true;
+    }
+    
+    boolean contains(long fingerprint) {
+        final long key = fingerprint == 0 ? ZERO_REPLACEMENT : fingerprint;
+        return contains(current, key) || contains(previous, key);
+    }
+    
+    /**
+     * The number of distinct candidates added, including the ones forgotten since.
+     */
+    int size() {
+        return size;
+    }
+    
+    TestedCandidates copy() {
+        TestedCandidates copy = new TestedCandidates();
+        copy.current = current.clone();
+        copy.currentCount = currentCount;
+        copy.previous = previous.clone();
+        copy.size = size;
+        return copy;
+    }
+    
+    /**
+     * Writes the fingerprints of both tables, leaving out their empty slots.
+     */
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        writeTable(out, current, currentCount);
+        int previousCount = 0;
+        for(long key : previous)
+            if(key != 0)
+                previousCount++;
+        writeTable(out, previous, previousCount);
+    }
+    
+    static TestedCandidates readFrom(DataInput in) throws IOException {
+        TestedCandidates tested = new TestedCandidates();
+        tested.size = in.readInt();
+        tested.currentCount = in.readInt();
+        tested.current = readTable(in, tested.currentCount);
+        tested.previous = readTable(in, in.readInt());
+        return tested;
+    }
+    
+    private static void writeTable(DataOutput out, long[] table, int count) throws IOException {
+        out.writeInt(count);
+        for(long key : table)
+            if(key != 0)
+                out.writeLong(key);
+    }
+    
+    private static long[] readTable(DataInput in, int count) throws IOException {
+        if(count < 0 || count > GENERATION_SIZE)
+            throw new IOException("Not a table of tested candidates: " + count + " entries");
+        int capacity = INITIAL_CAPACITY;
+        while(2*count > capacity)
+            capacity *= 2;
+        long[] table = new long[capacity];
+        for(int i = 0; i < count; i++)
+            insert(table, in.readLong());
+        return table;
+    }
+    
+    private static boolean contains(long[] table, long key) {
+        final int mask = table.length - 1;
+        for(int i = slot(key, mask); table[i] != 0; i = (i + 1) & mask)
+            if(table[i] == key)
+                return true;
+        return false;
+    }
+    
+    /**
+     * Inserts the key with linear probing, returning false if it was already there.
+     */
+    private static boolean insert(long[] table, long key) {
+        final int mask = table.length - 1;
+        int i = slot(key, mask);
+        for(; table[i] != 0; i = (i + 1) & mask)
+            if(table[i] == key)
+                return false;
+        table[i] = key;
+        return true;
+    }
+    
+    // Fingerprints are already well mixed, so folding the halves is enough
+    private static int slot(long key, int mask) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,56 @@
+package com.qiyanggeng.pictoprime4j;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MontgomeryModulusTest {
+    @ParameterizedTest
+    @ValueSource(ints = {3, 64, 65, 300, 1024, 4097, 16385, 17000})
+    void agreesWithBigInteger(int bits) {
+        Random random = new Random(bits);
+        BigInteger n = new BigInteger(bits, random).setBit(bits - 1).setBit(0);
+        MontgomeryModulus modulus = new MontgomeryModulus(n);
+        int k = modulus.limbCount();
+        BigInteger r = BigInteger.ONE.shiftLeft(64*k);
+        BigInteger rInverse = r.modInverse(n);
+        
+        assertEquals(r.mod(n), MontgomeryModulus.toBigInteger(modulus.one()));
+        for(int i = 0; i < 8; i++) {
+            BigInteger a = new BigInteger(bits, random).mod(n);
+            BigInteger b = new BigInteger(bits, random).mod(n);
+            long[] aLimbs = MontgomeryModulus.toLimbs(a, k);
+            long[] bLimbs = MontgomeryModulus.toLimbs(b, k);
+            assertEquals(a, MontgomeryModulus.toBigInteger(aLimbs));
+            
+            long[] result = new long[k];
+            modulus.multiply(aLimbs, bLimbs, result);
+            assertEquals(a.multiply(b).multiply(rInverse).mod(n), MontgomeryModulus.toBigInteger(result));
+            modulus.square(aLimbs, result);
+            assertEquals(a.multiply(a).multiply(rInverse).mod(n), MontgomeryModulus.toBigInteger(result));
+            modulus.doubleValue(aLimbs, result);
+            assertEquals(a.shiftLeft(1).mod(n), MontgomeryModulus.toBigInteger(result));
+            if(a.signum() > 0)
+                assertEquals(n.subtract(a), MontgomeryModulus.toBigInteger(modulus.negate(aLimbs)));
+        }
+    }
+    
+    @ParameterizedTest
+    @ValueSource(ints = {300, 16385})
+    void squaresInPlace(int bits) {
+        Random random = new Random(bits);
+        BigInteger n = new BigInteger(bits, random).setBit(bits - 1).setBit(0);
+        MontgomeryModulus modulus = new MontgomeryModulus(n);
+        BigInteger a = new BigInteger(bits, random).mod(n);
+        long[] x = MontgomeryModulus.toLimbs(a, modulus.limbCount());
+        long[] expected = new long[x.length];
+        modulus.multiply(x, x, expected);
+        
+        modulus.square(x, x);
+        assertArrayEquals(expected, x);
+    }
+}
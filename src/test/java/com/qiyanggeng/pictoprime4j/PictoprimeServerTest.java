@@ -0,0 +1,53 @@
+package com.qiyanggeng.pictoprime4j;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PictoprimeServerTest {
+    // Far too big to find a prime from within the tests
+    private static final String LARGE_NUMBER = "8049922777".repeat(200);
+    
+    @Test
+    void searchesTimeOut() throws Exception {
+        try(PictoprimeServer server = PictoprimeServer.start(0, new PrimeSearchEngine(1), Duration.ofSeconds(1));
+            Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.port())) {
+            Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.ISO_8859_1);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.ISO_8859_1));
+            out.write("FIND false " + LARGE_NUMBER + "\nPING\n");
+            out.flush();
+            
+            assertTrue(in.readLine().startsWith("FAILED java.util.concurrent.TimeoutException"));
+            assertEquals("PONG", in.readLine());
+        }
+    }
+    
+    @Test
+    void closingTheConnectionCancelsTheSearch() throws Exception {
+        PrimeSearchEngine engine = new PrimeSearchEngine(1);
+        try(PictoprimeServer server = PictoprimeServer.start(0, engine, Duration.ofMinutes(10))) {
+            try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.port())) {
+                Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.ISO_8859_1);
+                out.write("FIND false " + LARGE_NUMBER + "\n");
+                out.flush();
+                Thread.sleep(500);
+            }
+            
+            // Give the tester time to finish the candidate it was testing
+            Thread.sleep(2000);
+            long tests = engine.stats().probablePrimeTests();
+            Thread.sleep(2000);
+            assertEquals(tests, engine.stats().probablePrimeTests());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.qiyanggeng.pictoprime4j;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrimalityTesterTest {
+    private static final PrimalityTester STRONG_BASE_TWO = PrimalityTester.strongBaseTwo();
+    private static final PrimalityTester BAILLIE_PSW = PrimalityTester.bailliePSW(0);
+    private static final int SMALL_LIMIT = 200_000;
+    // The composites below SMALL_LIMIT that are strong probable primes to base 2 (OEIS A001262)
+    private static final Set<Integer> SMALL_PSEUDOPRIMES = Set.of(2047, 3277, 4033, 4681, 8321, 15841, 29341, 42799,
+            49141, 52633, 65281, 74665, 80581, 85489, 88357, 90751, 104653, 130561, 196093);
+    
+    @Test
+    void agreesWithBigIntegerOnSmallNumbers() {
+        for(int i = 0; i < SMALL_LIMIT; i++) {
+            BigInteger value = BigInteger.valueOf(i);
+            boolean prime = value.isProbablePrime(100);
+            assertEquals(prime, BAILLIE_PSW.isProbablePrime(value), value.toString());
+            assertEquals(prime || SMALL_PSEUDOPRIMES.contains(i), STRONG_BASE_TWO.isProbablePrime(value),
+                    value.toString());
+        }
+    }
+    
+    /**
+     * Random odd numbers, and random primes to have some that pass, of sizes on both sides of the limit past which
+     * the strong test runs on {@link MontgomeryModulus} rather than BigInteger.modPow. Past that limit a single test
+     * takes seconds, so there is only one number of that size.
+     */
+    @ParameterizedTest
+    @CsvSource({"300, 8", "1000, 8", "4000, 4", "17000, 1"})
+    void agreesWithBigIntegerOnLargeNumbers(int bits, int count) {
+        Random random = new Random(bits);
+        for(int i = 0; i < count; i++) {
+            BigInteger value = new BigInteger(bits, random).setBit(bits - 1).setBit(0);
+            boolean prime = value.isProbablePrime(100);
+            assertEquals(prime, STRONG_BASE_TWO.isProbablePrime(value), value.toString());
+            assertEquals(prime, BAILLIE_PSW.isProbablePrime(value), value.toString());
+        }
+        if(bits <= 1000) {
+            BigInteger prime = BigInteger.probablePrime(bits, random);
+            assertTrue(STRONG_BASE_TWO.isProbablePrime(prime), prime.toString());
+            assertTrue(BAILLIE_PSW.isProbablePrime(prime), prime.toString());
+        }
+    }
+    
+    /**
+     * Strong pseudoprimes to base 2, which the screen lets through and Baillie-PSW rejects.
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {"2047", "3277", "3215031751", "3474749660383", "341550071728321", "3825123056546413051",
+            "318665857834031151167461"})
+    void rejectsStrongPseudoprimes(String pseudoprime) {
+        BigInteger value = new BigInteger(pseudoprime);
+        assertFalse(value.isProbablePrime(100));
+        assertTrue(STRONG_BASE_TWO.isProbablePrime(value));
+        assertFalse(BAILLIE_PSW.isProbablePrime(value));
+    }
+    
+    /**
+     * 2^p - 1 is a strong pseudoprime to base 2 for every prime p that does not make it prime. 16411 is the first
+     * prime p past the limit of BigInteger.modPow, so the screen runs on {@link MontgomeryModulus}.
+     */
+    @Test
+    void rejectsLargeMersennePseudoprime() {
+        BigInteger value = BigInteger.ONE.shiftLeft(16411).subtract(BigInteger.ONE);
+        assertTrue(BigInteger.valueOf(16411).isProbablePrime(100));
+        assertTrue(STRONG_BASE_TWO.isProbablePrime(value));
+        assertFalse(BAILLIE_PSW.isProbablePrime(value));
+    }
+}
@@ -0,0 +1,36 @@
+package com.qiyanggeng.pictoprime4j;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrimeSearchEngineTest {
+    private static final BigInteger ORIGINAL = new BigInteger("80499227778049922777");
+    
+    @Test
+    void testerSurvivesAnError() throws Exception {
+        AtomicBoolean thrown = new AtomicBoolean();
+        PrimalityTester screen = value -> {
+            if(thrown.compareAndSet(false, true))
+                throw new StackOverflowError();
+            return value.isProbablePrime(20);
+        };
+        SearchOptions options = SearchOptions.defaults().withTimeout(Duration.ofSeconds(10));
+        
+        try(PrimeSearchEngine engine = new PrimeSearchEngine(1, screen, PrimalityTester.bailliePSW(0))) {
+            ExecutionException failure = assertThrows(ExecutionException.class,
+                    () -> engine.findPrimeAsync(ORIGINAL, options).get(10, TimeUnit.SECONDS));
+            assertInstanceOf(StackOverflowError.class, failure.getCause().getCause());
+            
+            // The only tester is still there to run the next search
+            PrimeResult result = engine.findPrimeAsync(ORIGINAL, options).get(10, TimeUnit.SECONDS);
+            assertTrue(result.prime().isProbablePrime(64));
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.qiyanggeng.pictoprime4j;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigInteger;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PrimeSearchTest {
+    private static final SearchOptions OPTIONS = SearchOptions.defaults().withTimeout(Duration.ofSeconds(10));
+    
+    /**
+     * A single digit is also the last one, which is never changed.
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 7, 9})
+    void rejectsNumbersWithoutModifiableDigit(int original) {
+        assertThrows(IllegalArgumentException.class,
+                () -> PrimeSearch.search(BigInteger.valueOf(original), Duration.ZERO, OPTIONS));
+    }
+    
+    @Test
+    void rejectsNumbersWhoseOnlyOtherDigitsMayNotChange() {
+        assertThrows(IllegalArgumentException.class,
+                () -> PrimeSearch.search(BigInteger.valueOf(333), Duration.ZERO, OPTIONS));
+    }
+    
+    /**
+     * The primes these lead to are small primes themselves, which the sieve must not take for composites.
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {10, 11, 77})
+    void findsSmallPrimes(int original) throws Exception {
+        PrimeResult result = PrimeSearch.search(BigInteger.valueOf(original), Duration.ZERO, OPTIONS);
+        assertTrue(result.prime().isProbablePrime(64), result.prime().toString());
+        assertEquals(2, result.prime().toString().length());
+    }
+    
+    @Test
+    void rejectsShardsWithoutModifiableDigit() {
+        // Position 1 holds a 3, which may not be changed
+        SearchOptions shard = OPTIONS.withShard(1, 2);
+        assertThrows(IllegalArgumentException.class,
+                () -> PrimeSearch.search(BigInteger.valueOf(831), Duration.ZERO, shard));
+    }
+}